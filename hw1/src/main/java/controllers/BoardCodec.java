@@ -0,0 +1,78 @@
+package controllers;
+
+import java.sql.SQLException;
+
+/**
+ * Packs a board into bytes: a version byte, the board size, then 2 bits per cell in row-major
+ * order, four cells per byte starting from the low bits. A classic board takes 5 bytes.
+ */
+public final class BoardCodec {
+
+  // Version of the encoding written by encode
+  public static final byte VERSION = 1;
+
+  // Version and size bytes before the cells
+  private static final int HEADER_SIZE = 2;
+
+  // Codes of the cells
+  private static final int EMPTY = 0;
+  private static final int X = 1;
+  private static final int O = 2;
+
+  private BoardCodec() {
+  }
+
+  /**
+   * Packs a board.
+   * @param boardState A square board of 'X', 'O' and empty cells.
+   * @return The packed board.
+   */
+  public static byte[] encode(char[][] boardState) {
+    final int size = boardState.length;
+    final byte[] bits = new byte[HEADER_SIZE + (size * size + 3) / 4];
+    bits[0] = VERSION;
+    bits[1] = (byte) size;
+    int cell = 0;
+    for (char[] row : boardState) {
+      for (char val : row) {
+        final int code = val == 'X' ? X : val == 'O' ? O : EMPTY;
+        bits[HEADER_SIZE + (cell >> 2)] |= code << ((cell & 3) << 1);
+        cell++;
+      }
+    }
+    return bits;
+  }
+
+  /**
+   * Unpacks a board packed by encode.
+   * @param bits The packed board.
+   * @return A new square board of 'X', 'O' and empty cells.
+   * @throws SQLException An exception thrown if the version is unknown or the bytes are invalid.
+   */
+  public static char[][] decode(byte[] bits) throws SQLException {
+    if (bits.length < HEADER_SIZE || bits[0] != VERSION) {
+      throw new SQLException("Unsupported board encoding");
+    }
+    final int size = bits[1];
+    if (size < 0 || bits.length != HEADER_SIZE + (size * size + 3) / 4) {
+      throw new SQLException("Invalid board encoding");
+    }
+    final char[][] boardState = new char[size][size];
+    int cell = 0;
+    for (char[] row : boardState) {
+      for (int j = 0; j < size; j++) {
+        final int code = (bits[HEADER_SIZE + (cell >> 2)] >> ((cell & 3) << 1)) & 3;
+        if (code == X) {
+          row[j] = 'X';
+        } else if (code == O) {
+          row[j] = 'O';
+        } else if (code != EMPTY) {
+          throw new SQLException("Invalid board encoding");
+        }
+        cell++;
+      }
+    }
+    return boardState;
+  }
+
+}
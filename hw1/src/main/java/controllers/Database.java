@@ -1,36 +1,196 @@
 package controllers;
 
+import java.nio.ByteBuffer;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import models.Engine;
 import models.GameBoard;
 import models.Player;
 
 /**
- * A lightweight database that stores only one GameBoard object.
+ * A lightweight database that stores GameBoard objects by game ID. Each game is stored as a
+ * snapshot of the board followed by an append-only log of the moves played since.
+ * Every thread uses its own connection to the database in WAL mode, so reads run in parallel
+ * while writes are serialized on a single lock.
  */
-public class Database {
-  
-  private static final String DATABASE_NAME = "tictactoe.db";
-  private static final String GAMEBOARD_TABLE_NAME = "GB_TABLE";
-  private static final String GAMEBOARD_ROW_ID = "0";
-  
-  private Connection connection;
-  
-  /**
-   * Instantiate the database by creating a GameBoard table within it.
-   * @throws SQLException An exception thrown when creating the connection or creating the table.
+public class Database implements GameStore {
+
+  // Status of a game that is waiting for player 2
+  public static final String STATUS_OPEN = "open";
+
+  // Status of a game that has started and is not over
+  public static final String STATUS_IN_PROGRESS = "in_progress";
+
+  // Status of a game that is over
+  public static final String STATUS_FINISHED = "finished";
+
+  // Number of logged moves between two snapshots of a game
+  public static final int SNAPSHOT_INTERVAL = 8;
+
+  // File of the database opened by default
+  public static final String DATABASE_NAME = "tictactoe.db";
+
+  private static final String GAMES_TABLE_NAME = "GAMES";
+  private static final String MOVES_TABLE_NAME = "GAME_MOVES";
+
+  // Table of finished games, each stored as one compact record
+  private static final String ARCHIVE_TABLE_NAME = "GAMES_ARCHIVE";
+
+  // Tables of the single-game schema, migrated on startup
+  private static final String LEGACY_GAMEBOARD_TABLE_NAME = "GB_TABLE";
+  private static final String LEGACY_MOVES_TABLE_NAME = "MOVES";
+
+  // Game table from before boards were packed, migrated on startup
+  private static final String TEXT_BOARDS_TABLE_NAME = "GAMES_TEXT_BOARDS";
+
+  // Columns of a game row, in the order they are bound
+  private static final String GAME_COLUMNS = "GAME_ID, P1_ID, P1_TYPE, P2_ID, P2_TYPE, "
+      + "GAME_STARTED, TURN, WINNER, BOARD_BITS, IS_DRAW, BOARD_SIZE, WIN_LENGTH, ENGINE, "
+      + "SNAPSHOT_SEQ, STATUS, UPDATED_AT";
+
+  // Columns of a game row whose board is stored as text, one character per cell
+  private static final String TEXT_BOARD_GAME_COLUMNS = GAME_COLUMNS.replace("BOARD_BITS",
+      "BOARD_STATE");
+
+  // Rows fetched at a time when scanning many games
+  private static final int SCAN_FETCH_SIZE = 256;
+
+  // Time a connection waits for another process to release the database, in milliseconds
+  private static final int BUSY_TIMEOUT_MS = 5000;
+
+  /**
+   * A connection owned by one thread, with its statements prepared once and rebound on every call.
+   */
+  private static class ThreadConnection {
+
+    private final Connection connection;
+    private final PreparedStatement setStatement;
+    private final PreparedStatement getStatement;
+    private final PreparedStatement unsetStatement;
+    private final PreparedStatement appendMoveStatement;
+    private final PreparedStatement getMovesStatement;
+    private final PreparedStatement truncateMovesStatement;
+    private final PreparedStatement unsetMovesStatement;
+    private final PreparedStatement archiveStatement;
+    private final PreparedStatement getArchivedStatement;
+    private final PreparedStatement unsetArchivedStatement;
+
+    /**
+     * Opens a connection to the database and prepares its statements.
+     * @param url The JDBC URL of the database.
+     * @throws SQLException An exception thrown when opening the connection.
+     */
+    private ThreadConnection(String url) throws SQLException {
+      connection = DriverManager.getConnection(url);
+      try (Statement statement = connection.createStatement()) {
+        statement.execute("PRAGMA busy_timeout=" + BUSY_TIMEOUT_MS + ";");
+        statement.execute("PRAGMA journal_mode=WAL;");
+
+        // Sync the WAL on every commit, so an acknowledged move survives a power loss
+        statement.execute("PRAGMA synchronous=FULL;");
+      }
+      setStatement = connection.prepareStatement("REPLACE INTO " + GAMES_TABLE_NAME
+          + " (" + GAME_COLUMNS + ")\nVALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?);");
+      getStatement = connection.prepareStatement(
+          "SELECT * FROM " + GAMES_TABLE_NAME + " WHERE GAME_ID=?;");
+      unsetStatement = connection.prepareStatement(
+          "DELETE FROM " + GAMES_TABLE_NAME + " WHERE GAME_ID=?;");
+
+      // Moves already logged are skipped, as a write-behind flush may log a move twice
+      appendMoveStatement = connection.prepareStatement("INSERT OR IGNORE INTO "
+          + MOVES_TABLE_NAME + " (GAME_ID, SEQ, PLAYER, X, Y) VALUES (?, ?, ?, ?, ?);");
+      getMovesStatement = connection.prepareStatement("SELECT PLAYER, X, Y FROM "
+          + MOVES_TABLE_NAME + " WHERE GAME_ID=? AND SEQ>? ORDER BY SEQ;");
+      truncateMovesStatement = connection.prepareStatement(
+          "DELETE FROM " + MOVES_TABLE_NAME + " WHERE GAME_ID=? AND SEQ>?;");
+      unsetMovesStatement = connection.prepareStatement(
+          "DELETE FROM " + MOVES_TABLE_NAME + " WHERE GAME_ID=?;");
+      archiveStatement = connection.prepareStatement("REPLACE INTO " + ARCHIVE_TABLE_NAME
+          + " (GAME_ID, ARCHIVED_AT, RECORD) VALUES (?, ?, ?);");
+      getArchivedStatement = connection.prepareStatement(
+          "SELECT RECORD FROM " + ARCHIVE_TABLE_NAME + " WHERE GAME_ID=?;");
+      unsetArchivedStatement = connection.prepareStatement(
+          "DELETE FROM " + ARCHIVE_TABLE_NAME + " WHERE GAME_ID=?;");
+    }
+
+    /**
+     * Closes the prepared statements and the connection.
+     * @throws SQLException An exception thrown when closing the connection.
+     */
+    private void close() throws SQLException {
+      setStatement.close();
+      getStatement.close();
+      unsetStatement.close();
+      appendMoveStatement.close();
+      getMovesStatement.close();
+      truncateMovesStatement.close();
+      unsetMovesStatement.close();
+      archiveStatement.close();
+      getArchivedStatement.close();
+      unsetArchivedStatement.close();
+      connection.close();
+    }
+
+  }
+
+  // The connection of every thread that has used the database
+  private final ConcurrentMap<Thread, ThreadConnection> connections = new ConcurrentHashMap<>();
+
+  private final ThreadLocal<ThreadConnection> threadConnection = new ThreadLocal<>();
+
+  // Held by the single writer, across a whole transaction
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  private volatile boolean closed;
+
+  // JDBC URL of the database file
+  private final String url;
+
+  /**
+   * Instantiate the default database by creating the game and move tables within it.
+   * @throws SQLException An exception thrown when creating the connection or creating the tables.
    */
   public Database() throws SQLException {
-    // Create the database first
-    connection = DriverManager.getConnection("jdbc:sqlite:" + DATABASE_NAME);
-    
-    // Create the table to store the gameboard
+    this(DATABASE_NAME);
+  }
+
+  /**
+   * Instantiate the database in the given file by creating the game and move tables within it.
+   * @param fileName The path of the database file.
+   * @throws SQLException An exception thrown when creating the connection or creating the tables.
+   */
+  public Database(String fileName) throws SQLException {
+    url = "jdbc:sqlite:" + fileName;
+
+    // Create the database first, on a connection of its own since the statements of each
+    // thread's connection are prepared against the finished schema
+    final Connection connection = DriverManager.getConnection(url);
+
+    // Set aside a game table that stores boards as text, to be copied into the new one
     Statement statement = connection.createStatement();
-    String sql = "CREATE TABLE IF NOT EXISTS " + GAMEBOARD_TABLE_NAME + " (\n"
-        + "ID INT PRIMARY KEY      NOT NULL, "
+    if (tableExists(statement, GAMES_TABLE_NAME)
+        && !columnExists(statement, GAMES_TABLE_NAME, "BOARD_BITS")) {
+      statement.executeUpdate("ALTER TABLE " + GAMES_TABLE_NAME + " RENAME TO "
+          + TEXT_BOARDS_TABLE_NAME + ";");
+    }
+
+    // Create the table to store the gameboards
+    String sql = "CREATE TABLE IF NOT EXISTS " + GAMES_TABLE_NAME + " (\n"
+        + "GAME_ID        TEXT     PRIMARY KEY NOT NULL, "
         + "P1_ID          INT      NOT NULL, "
         + "P1_TYPE        CHAR(1)  NOT NULL, "
         + "P2_ID          INT      NOT NULL, "
@@ -38,71 +198,401 @@ public class Database {
         + "GAME_STARTED   BOOLEAN  NOT NULL, "
         + "TURN           INT      NOT NULL, "
         + "WINNER         INT      NOT NULL, "
-        + "BOARD_STATE    CHAR(9)  NOT NULL, "
-        + "IS_DRAW        BOOLEAN  NOT NULL);";
+        + "BOARD_STATE    TEXT, "
+        + "BOARD_BITS     BLOB, "
+        + "IS_DRAW        BOOLEAN  NOT NULL, "
+        + "BOARD_SIZE     INT      NOT NULL, "
+        + "WIN_LENGTH     INT      NOT NULL, "
+        + "ENGINE         TEXT, "
+        + "SNAPSHOT_SEQ   INT      NOT NULL, "
+        + "STATUS         TEXT     NOT NULL, "
+        + "UPDATED_AT     INT      NOT NULL);";
     statement.executeUpdate(sql);
-    
+
+    // Create the append-only table of moves played since each snapshot
+    sql = "CREATE TABLE IF NOT EXISTS " + MOVES_TABLE_NAME + " (\n"
+        + "GAME_ID        TEXT     NOT NULL, "
+        + "SEQ            INT      NOT NULL, "
+        + "PLAYER         INT      NOT NULL, "
+        + "X              INT      NOT NULL, "
+        + "Y              INT      NOT NULL, "
+        + "PRIMARY KEY (GAME_ID, SEQ)) WITHOUT ROWID;";
+    statement.executeUpdate(sql);
+
+    // Create the table of archived games
+    sql = "CREATE TABLE IF NOT EXISTS " + ARCHIVE_TABLE_NAME + " (\n"
+        + "GAME_ID        TEXT     PRIMARY KEY NOT NULL, "
+        + "ARCHIVED_AT    INT      NOT NULL, "
+        + "RECORD         BLOB     NOT NULL);";
+    statement.executeUpdate(sql);
+
+    migrateLegacyTables(statement);
+
+    // Index the games once any old table and its indexes are gone
+    statement.executeUpdate("CREATE INDEX IF NOT EXISTS GAMES_STATUS_INDEX ON "
+        + GAMES_TABLE_NAME + " (STATUS);");
+    statement.executeUpdate("CREATE INDEX IF NOT EXISTS GAMES_UPDATED_AT_INDEX ON "
+        + GAMES_TABLE_NAME + " (UPDATED_AT);");
+
     // Clean up
     statement.close();
+    connection.close();
+  }
+
+  /**
+   * Moves the games of older schemas into the current tables. Their boards stay stored as text
+   * until each game is next written.
+   * @param statement The statement to run the queries with.
+   * @throws SQLException An exception thrown when reading, copying or dropping the tables.
+   */
+  private void migrateLegacyTables(Statement statement) throws SQLException {
+    if (tableExists(statement, TEXT_BOARDS_TABLE_NAME)) {
+      statement.executeUpdate("INSERT OR IGNORE INTO " + GAMES_TABLE_NAME
+          + " (" + TEXT_BOARD_GAME_COLUMNS + ")\nSELECT " + TEXT_BOARD_GAME_COLUMNS + " FROM "
+          + TEXT_BOARDS_TABLE_NAME + ";");
+      statement.executeUpdate("DROP TABLE " + TEXT_BOARDS_TABLE_NAME + ";");
+    }
+    if (tableExists(statement, LEGACY_GAMEBOARD_TABLE_NAME)) {
+      // Upgrade tables created before boards could be resized or logged
+      addColumnIfMissing(statement, "BOARD_SIZE", "INT NOT NULL DEFAULT 3");
+      addColumnIfMissing(statement, "WIN_LENGTH", "INT NOT NULL DEFAULT 3");
+      addColumnIfMissing(statement, "ENGINE", "TEXT");
+      addColumnIfMissing(statement, "SNAPSHOT_SEQ", "INT NOT NULL DEFAULT 0");
+
+      statement.executeUpdate("INSERT OR IGNORE INTO " + GAMES_TABLE_NAME
+          + " (" + TEXT_BOARD_GAME_COLUMNS + ")\n"
+          + "SELECT CAST(ID AS TEXT), P1_ID, P1_TYPE, P2_ID, P2_TYPE, GAME_STARTED, TURN, "
+          + "WINNER, BOARD_STATE, IS_DRAW, BOARD_SIZE, WIN_LENGTH, ENGINE, SNAPSHOT_SEQ, "
+          + "CASE WHEN WINNER <> 0 OR IS_DRAW THEN '" + STATUS_FINISHED + "' "
+          + "WHEN GAME_STARTED THEN '" + STATUS_IN_PROGRESS + "' "
+          + "ELSE '" + STATUS_OPEN + "' END, "
+          + System.currentTimeMillis() + " FROM " + LEGACY_GAMEBOARD_TABLE_NAME + ";");
+      statement.executeUpdate("DROP TABLE " + LEGACY_GAMEBOARD_TABLE_NAME + ";");
+    }
+    if (tableExists(statement, LEGACY_MOVES_TABLE_NAME)) {
+      statement.executeUpdate("INSERT OR IGNORE INTO " + MOVES_TABLE_NAME
+          + " (GAME_ID, SEQ, PLAYER, X, Y)\n"
+          + "SELECT CAST(GAME_ID AS TEXT), SEQ, PLAYER, X, Y FROM "
+          + LEGACY_MOVES_TABLE_NAME + ";");
+      statement.executeUpdate("DROP TABLE " + LEGACY_MOVES_TABLE_NAME + ";");
+    }
+  }
+
+  /**
+   * Checks if a table exists.
+   * @param statement The statement to run the query with.
+   * @param table     The name of the table.
+   * @return True if the table exists, false otherwise.
+   * @throws SQLException An exception thrown when reading the schema.
+   */
+  private boolean tableExists(Statement statement, String table) throws SQLException {
+    try (ResultSet rs = statement.executeQuery("SELECT name FROM sqlite_master "
+        + "WHERE type='table' AND name='" + table + "';")) {
+      return rs.next();
+    }
   }
-  
+
+  /**
+   * Checks if a table has a column.
+   * @param statement The statement to run the query with.
+   * @param table     The name of the table.
+   * @param column    The name of the column.
+   * @return True if the column exists, false otherwise.
+   * @throws SQLException An exception thrown when reading the schema.
+   */
+  private boolean columnExists(Statement statement, String table, String column)
+      throws SQLException {
+    try (ResultSet rs = statement.executeQuery("PRAGMA table_info(" + table + ");")) {
+      while (rs.next()) {
+        if (column.equalsIgnoreCase(rs.getString("name"))) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
   /**
-   * Creates or updates the gameboard into the database.
+   * Adds a column to the legacy GameBoard table if an older version of the table lacks it.
+   * @param statement  The statement to run the queries with.
+   * @param column     The name of the column.
+   * @param definition The type and constraints of the column.
+   * @throws SQLException An exception thrown when reading or altering the table.
+   */
+  private void addColumnIfMissing(Statement statement, String column, String definition)
+      throws SQLException {
+    if (!columnExists(statement, LEGACY_GAMEBOARD_TABLE_NAME, column)) {
+      statement.executeUpdate("ALTER TABLE " + LEGACY_GAMEBOARD_TABLE_NAME
+          + " ADD COLUMN " + column + " " + definition + ";");
+    }
+  }
+
+  /**
+   * Gets the status a gameboard is indexed by.
+   * @param gameboard The gameboard.
+   * @return STATUS_OPEN, STATUS_IN_PROGRESS or STATUS_FINISHED.
+   */
+  public static String statusOf(GameBoard gameboard) {
+    if (gameboard.isGameOver()) {
+      return STATUS_FINISHED;
+    }
+    return gameboard.isGameStarted() ? STATUS_IN_PROGRESS : STATUS_OPEN;
+  }
+
+  /**
+   * Creates or updates the gameboard into the database as a snapshot.
+   * Logged moves past the snapshot belonged to a replaced game and are removed.
+   * @param gameId    The ID of the game.
    * @param gameboard The gameboard to set.
    * @throws SQLException An exception thrown when setting the GameBoard in the database.
    */
-  public void set(GameBoard gameboard) throws SQLException {
-    // Insert the gameboard into the database
-    Statement statement = connection.createStatement();
-    
-    // Convert gameboard state into a string
-    StringBuilder boardStateBuilder = new StringBuilder();
-    for (char[] row : gameboard.getBoardState()) {
-      for (char val : row) {
-        boardStateBuilder.append(val == 0 ? '-' : val);
-      }
-    }
-    String boardState = boardStateBuilder.toString();
-    
-    String sql = "REPLACE INTO " + GAMEBOARD_TABLE_NAME + " ("
-        + "ID, P1_ID, P1_TYPE, P2_ID, P2_TYPE, GAME_STARTED,"
-        + "TURN, WINNER, BOARD_STATE, IS_DRAW)\nVALUES ("
-        + GAMEBOARD_ROW_ID + ", "
-        + Integer.toString(gameboard.getP1().getId()) + ", "
-        + "'" + gameboard.getP1().getType() + "', "
-        + Integer.toString(gameboard.getP2() != null ? gameboard.getP2().getId() : 0) + ", "
-        + "'" + (gameboard.getP2() != null ? gameboard.getP2().getType() : '-') + "', "
-        + Integer.toString(gameboard.isGameStarted() ? 1 : 0) + ", "
-        + Integer.toString(gameboard.getTurn()) + ", "
-        + Integer.toString(gameboard.getWinner()) + ", "
-        + "'" + boardState + "', "
-        + Integer.toString(gameboard.isDraw() ? 1 : 0) + ");";
-    statement.executeUpdate(sql);
-    
-    // Clean up
-    statement.close();
+  @Override
+  public void set(String gameId, GameBoard gameboard) throws SQLException {
+    final ThreadConnection c = connection();
+    inTransaction(() -> {
+      writeSnapshot(c, gameId, gameboard);
+      c.truncateMovesStatement.setString(1, gameId);
+      c.truncateMovesStatement.setInt(2, gameboard.getMoveCount());
+      c.truncateMovesStatement.executeUpdate();
+    });
+  }
+
+  /**
+   * Appends the moves played on the gameboard since the given move to the move log, skipping
+   * any move already logged. The gameboard is snapshotted as well when the game ends or every
+   * SNAPSHOT_INTERVAL moves.
+   * @param gameId    The ID of the game.
+   * @param gameboard The gameboard the moves were played on.
+   * @param fromSeq   The sequence number of the last move already stored.
+   * @throws SQLException An exception thrown when appending the moves.
+   */
+  @Override
+  public void recordMoves(String gameId, GameBoard gameboard, int fromSeq)
+      throws SQLException {
+    final ThreadConnection c = connection();
+    final int toSeq = gameboard.getMoveCount();
+    final int size = gameboard.getSize();
+    inTransaction(() -> {
+      for (int seq = fromSeq + 1; seq <= toSeq; seq++) {
+        final int cell = gameboard.getMove(seq);
+        c.appendMoveStatement.setString(1, gameId);
+        c.appendMoveStatement.setInt(2, seq);
+        c.appendMoveStatement.setInt(3, seq % 2 == 1 ? 1 : 2);
+        c.appendMoveStatement.setInt(4, cell / size);
+        c.appendMoveStatement.setInt(5, cell % size);
+        c.appendMoveStatement.executeUpdate();
+      }
+      if (gameboard.isGameOver() || toSeq / SNAPSHOT_INTERVAL != fromSeq / SNAPSHOT_INTERVAL) {
+        writeSnapshot(c, gameId, gameboard);
+      }
+    });
   }
-  
+
   /**
-   * Get the gameboard from the database.
+   * Writes the gameboard's row, marking it as a snapshot of every move played so far.
+   * @param c         The connection of the current thread.
+   * @param gameId    The ID of the game.
+   * @param gameboard The gameboard to write.
+   * @throws SQLException An exception thrown when writing the row.
+   */
+  private void writeSnapshot(ThreadConnection c, String gameId, GameBoard gameboard)
+      throws SQLException {
+    bindSnapshot(c, gameId, gameboard);
+    c.setStatement.executeUpdate();
+  }
+
+  /**
+   * Binds the gameboard's row to the insert statement, as a snapshot of every move played.
+   * @param c         The connection of the current thread.
+   * @param gameId    The ID of the game.
+   * @param gameboard The gameboard to bind.
+   * @throws SQLException An exception thrown when binding the row.
+   */
+  private static void bindSnapshot(ThreadConnection c, String gameId, GameBoard gameboard)
+      throws SQLException {
+    c.setStatement.setString(1, gameId);
+    c.setStatement.setInt(2, gameboard.getP1().getId());
+    c.setStatement.setString(3, String.valueOf(gameboard.getP1().getType()));
+    c.setStatement.setInt(4, gameboard.getP2() != null ? gameboard.getP2().getId() : 0);
+    c.setStatement.setString(5, String.valueOf(
+        gameboard.getP2() != null ? gameboard.getP2().getType() : '-'));
+    c.setStatement.setBoolean(6, gameboard.isGameStarted());
+    c.setStatement.setInt(7, gameboard.getTurn());
+    c.setStatement.setInt(8, gameboard.getWinner());
+    c.setStatement.setBytes(9, BoardCodec.encode(gameboard.getBoardState()));
+    c.setStatement.setBoolean(10, gameboard.isDraw());
+    c.setStatement.setInt(11, gameboard.getSize());
+    c.setStatement.setInt(12, gameboard.getWinLength());
+    c.setStatement.setString(13,
+        gameboard.getEngine() != null ? gameboard.getEngine().getName() : null);
+    c.setStatement.setInt(14, gameboard.getMoveCount());
+    c.setStatement.setString(15, statusOf(gameboard));
+    c.setStatement.setLong(16, System.currentTimeMillis());
+  }
+
+  /**
+   * Writes a batch of games in one transaction, replacing the games with the same IDs like
+   * set does, except that finished games go straight to the archive as archive would move
+   * them. Each statement is sent to SQLite as one batch rather than once per game. Games
+   * should have distinct IDs, as the statements of each kind run together.
+   * @param games The games, keyed by game ID.
+   * @throws SQLException An exception thrown when the games cannot be written.
+   */
+  void setAll(Map<String, GameBoard> games) throws SQLException {
+    final ThreadConnection c = connection();
+    final PreparedStatement[] statements = {c.setStatement, c.truncateMovesStatement,
+        c.archiveStatement, c.unsetStatement, c.unsetMovesStatement};
+    inTransaction(() -> {
+      try {
+        for (Map.Entry<String, GameBoard> entry : games.entrySet()) {
+          final String gameId = entry.getKey();
+          final GameBoard gameboard = entry.getValue();
+          if (gameboard.isGameOver()) {
+            bindArchived(c, gameId, gameboard);
+            c.archiveStatement.addBatch();
+            c.unsetStatement.setString(1, gameId);
+            c.unsetStatement.addBatch();
+            c.unsetMovesStatement.setString(1, gameId);
+            c.unsetMovesStatement.addBatch();
+          } else {
+            bindSnapshot(c, gameId, gameboard);
+            c.setStatement.addBatch();
+            c.truncateMovesStatement.setString(1, gameId);
+            c.truncateMovesStatement.setInt(2, gameboard.getMoveCount());
+            c.truncateMovesStatement.addBatch();
+          }
+        }
+        for (PreparedStatement statement : statements) {
+          statement.executeBatch();
+        }
+      } finally {
+        // Leave nothing queued for the next batch if this one failed
+        for (PreparedStatement statement : statements) {
+          statement.clearBatch();
+        }
+      }
+    });
+  }
+
+  /**
+   * Get the gameboard from the database, looking in the archive if it is not a live game.
+   * @param gameId The ID of the game.
    * @return The gameboard or null.
    * @throws SQLException An exception thrown when the GameBoard is retrieved from the table.
    */
-  public GameBoard get() throws SQLException {
-    GameBoard gameboard;
-    
-    // Insert the gameboard into the database
-    Statement statement = connection.createStatement();
-    
-    String sql = "SELECT * FROM " + GAMEBOARD_TABLE_NAME + " WHERE ID=" + GAMEBOARD_ROW_ID + ";";
-    
-    ResultSet rs = statement.executeQuery(sql);
-    
-    if (!rs.next()) {
-      // Return null if no GameBoard is found
-      return null;
-    }
-    
+  @Override
+  public GameBoard get(String gameId) throws SQLException {
+    final ThreadConnection c = connection();
+    c.getStatement.setString(1, gameId);
+    try (ResultSet rs = c.getStatement.executeQuery()) {
+      if (!rs.next()) {
+        // Fall back to the archive, which returns null if no GameBoard is found
+        return getArchived(c, gameId);
+      }
+
+      GameBoard gameboard = readSnapshot(rs);
+      replayMoves(c, gameId, gameboard, rs.getInt("snapshot_seq"));
+      gameboard.setEngine(Engine.forName(rs.getString("engine")));
+      return gameboard;
+    }
+  }
+
+  /**
+   * Load every open or in-progress game in one streaming scan of the status index,
+   * joined with the moves logged after each snapshot.
+   * @param consumer The consumer of each game ID and its gameboard.
+   * @throws SQLException An exception thrown when the games are retrieved from the tables.
+   */
+  @Override
+  public void loadActive(BiConsumer<String, GameBoard> consumer)
+      throws SQLException {
+    scan(consumer, STATUS_OPEN, STATUS_IN_PROGRESS);
+  }
+
+  /**
+   * Load every game, finished or not, in one streaming scan, followed by the archived games.
+   * @param consumer The consumer of each game ID and its gameboard.
+   * @throws SQLException An exception thrown when the games are retrieved from the tables.
+   */
+  public void loadAll(BiConsumer<String, GameBoard> consumer) throws SQLException {
+    scan(consumer);
+    final String sql = "SELECT GAME_ID, RECORD FROM " + ARCHIVE_TABLE_NAME + ";";
+    try (PreparedStatement statement = connection().connection.prepareStatement(sql)) {
+      statement.setFetchSize(SCAN_FETCH_SIZE);
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          consumer.accept(rs.getString("game_id"),
+              GameRecord.readFrom(ByteBuffer.wrap(rs.getBytes("record"))).restore());
+        }
+      }
+    }
+  }
+
+  /**
+   * Load the games with the given statuses, joined with the moves logged after each snapshot.
+   * @param consumer The consumer of each game ID and its gameboard.
+   * @param statuses The statuses of the games to load, or none to load every game.
+   * @throws SQLException An exception thrown when the games are retrieved from the tables.
+   */
+  private void scan(BiConsumer<String, GameBoard> consumer, String... statuses)
+      throws SQLException {
+    final String where = statuses.length == 0 ? ""
+        : "WHERE G.STATUS IN (" + String.join(", ", Collections.nCopies(statuses.length, "?"))
+            + ") ";
+    final String sql = "SELECT G.*, M.SEQ AS M_SEQ, M.PLAYER AS M_PLAYER, "
+        + "M.X AS M_X, M.Y AS M_Y FROM " + GAMES_TABLE_NAME + " G "
+        + "LEFT JOIN " + MOVES_TABLE_NAME + " M "
+        + "ON M.GAME_ID = G.GAME_ID AND M.SEQ > G.SNAPSHOT_SEQ "
+        + where + "ORDER BY G.GAME_ID, M.SEQ;";
+    try (PreparedStatement statement = connection().connection.prepareStatement(sql)) {
+      for (int i = 0; i < statuses.length; i++) {
+        statement.setString(i + 1, statuses[i]);
+      }
+      statement.setFetchSize(SCAN_FETCH_SIZE);
+      try (ResultSet rs = statement.executeQuery()) {
+        String gameId = null;
+        GameBoard gameboard = null;
+        String engineName = null;
+        while (rs.next()) {
+          if (!rs.getString("game_id").equals(gameId)) {
+            // Emit the previous game once all of its moves are replayed
+            emit(consumer, gameId, gameboard, engineName);
+            gameId = rs.getString("game_id");
+            gameboard = readSnapshot(rs);
+            engineName = rs.getString("engine");
+          }
+          rs.getInt("m_seq");
+          if (!rs.wasNull()) {
+            replayMove(gameboard, rs.getInt("m_player"), rs.getInt("m_x"), rs.getInt("m_y"));
+          }
+        }
+        emit(consumer, gameId, gameboard, engineName);
+      }
+    }
+  }
+
+  /**
+   * Attaches the engine to a loaded gameboard and passes it to the consumer.
+   * @param consumer   The consumer of each game ID and its gameboard.
+   * @param gameId     The ID of the game, or null if no game was loaded yet.
+   * @param gameboard  The loaded gameboard.
+   * @param engineName The name of the game's engine, or null.
+   */
+  private void emit(BiConsumer<String, GameBoard> consumer, String gameId, GameBoard gameboard,
+      String engineName) {
+    if (gameId != null) {
+      gameboard.setEngine(Engine.forName(engineName));
+      consumer.accept(gameId, gameboard);
+    }
+  }
+
+  /**
+   * Rebuilds the gameboard stored in the current row, without its engine.
+   * @param rs The result set positioned on a game row.
+   * @return The gameboard.
+   * @throws SQLException An exception thrown when reading the row.
+   */
+  private GameBoard readSnapshot(ResultSet rs) throws SQLException {
     // Get raw values from the row
     Player p1 = new Player(rs.getString("p1_type").charAt(0), rs.getInt("p1_id"));
     Player p2 = rs.getInt("p2_id") != 0
@@ -111,39 +601,328 @@ public class Database {
     boolean gameStarted = rs.getBoolean("game_started");
     int turn = rs.getInt("turn");
     int winner = rs.getInt("winner");
-    String boardStateString = rs.getString("board_state");
+    byte[] boardBits = rs.getBytes("board_bits");
     boolean isDraw = rs.getBoolean("is_draw");
-    
-    // Rebuild board state
-    char[][] boardState = new char[3][3];
-    for (int i = 0; i < 3; i++) {
-      for (int j = 0; j < 3; j++) {
-        char val = boardStateString.charAt(i * 3 + j);
-        boardState[i][j] = val == '-' ? 0 : val;
+    int size = rs.getInt("board_size");
+    int winLength = rs.getInt("win_length");
+
+    // Rebuild board state, from text in rows written before boards were packed
+    char[][] boardState;
+    if (boardBits != null) {
+      boardState = BoardCodec.decode(boardBits);
+    } else {
+      String boardStateString = rs.getString("board_state");
+      boardState = new char[size][size];
+      for (int i = 0; i < size; i++) {
+        for (int j = 0; j < size; j++) {
+          char val = boardStateString.charAt(i * size + j);
+          boardState[i][j] = val == '-' ? 0 : val;
+        }
       }
     }
-    
+
     // Instantiate the gameboard
-    gameboard = new GameBoard(p1, p2, gameStarted, turn, boardState, winner, isDraw);
-    
-    // Clean up
-    statement.close();
-    
-    return gameboard;
+    return new GameBoard(p1, p2, gameStarted, turn, boardState, winner, isDraw, winLength);
+  }
+
+  /**
+   * Replays the moves logged after a snapshot onto the snapshot's gameboard.
+   * @param c           The connection of the current thread.
+   * @param gameId      The ID of the game.
+   * @param gameboard   The gameboard restored from the snapshot, without its engine.
+   * @param snapshotSeq The sequence number of the last move in the snapshot.
+   * @throws SQLException An exception thrown when reading the log or if a move cannot be replayed.
+   */
+  private void replayMoves(ThreadConnection c, String gameId, GameBoard gameboard, int snapshotSeq)
+      throws SQLException {
+    c.getMovesStatement.setString(1, gameId);
+    c.getMovesStatement.setInt(2, snapshotSeq);
+    try (ResultSet rs = c.getMovesStatement.executeQuery()) {
+      while (rs.next()) {
+        replayMove(gameboard, rs.getInt("player"), rs.getInt("x"), rs.getInt("y"));
+      }
+    }
+  }
+
+  /**
+   * Replays one logged move onto a gameboard.
+   * @param gameboard The gameboard, without its engine.
+   * @param playerId  The ID of the player who made the move.
+   * @param x         The x-position of the move.
+   * @param y         The y-position of the move.
+   * @throws SQLException An exception thrown if the move cannot be replayed.
+   */
+  private void replayMove(GameBoard gameboard, int playerId, int x, int y) throws SQLException {
+    Player player = playerId == 1 ? gameboard.getP1() : gameboard.getP2();
+    try {
+      gameboard.playTurn(player, x, y);
+    } catch (Exception e) {
+      throw new SQLException("Move log cannot be replayed: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Get an archived gameboard.
+   * @param c      The connection of the current thread.
+   * @param gameId The ID of the game.
+   * @return The gameboard or null.
+   * @throws SQLException An exception thrown when the record is retrieved or decoded.
+   */
+  private GameBoard getArchived(ThreadConnection c, String gameId) throws SQLException {
+    c.getArchivedStatement.setString(1, gameId);
+    try (ResultSet rs = c.getArchivedStatement.executeQuery()) {
+      if (!rs.next()) {
+        return null;
+      }
+      return GameRecord.readFrom(ByteBuffer.wrap(rs.getBytes("record"))).restore();
+    }
+  }
+
+  /**
+   * Moves a finished game out of the live tables into the archive, as a single record of its
+   * final board. Games that are not finished stay live, since their moves are still logged.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game is read, archived or deleted.
+   */
+  @Override
+  public void archive(String gameId) throws SQLException {
+    final ThreadConnection c = connection();
+    inTransaction(() -> {
+      c.getStatement.setString(1, gameId);
+      final GameBoard gameboard;
+      try (ResultSet rs = c.getStatement.executeQuery()) {
+        if (!rs.next() || !STATUS_FINISHED.equals(rs.getString("status"))) {
+          return;
+        }
+        gameboard = readSnapshot(rs);
+        replayMoves(c, gameId, gameboard, rs.getInt("snapshot_seq"));
+        gameboard.setEngine(Engine.forName(rs.getString("engine")));
+      }
+      bindArchived(c, gameId, gameboard);
+      c.archiveStatement.executeUpdate();
+      c.unsetStatement.setString(1, gameId);
+      c.unsetStatement.executeUpdate();
+      c.unsetMovesStatement.setString(1, gameId);
+      c.unsetMovesStatement.executeUpdate();
+    });
+  }
+
+  /**
+   * Binds a finished gameboard's archived record to the archive statement.
+   * @param c         The connection of the current thread.
+   * @param gameId    The ID of the game.
+   * @param gameboard The finished gameboard, with its engine.
+   * @throws SQLException An exception thrown when binding the record.
+   */
+  private static void bindArchived(ThreadConnection c, String gameId, GameBoard gameboard)
+      throws SQLException {
+    final GameRecord record = GameRecord.of(gameboard);
+    final ByteBuffer buffer = ByteBuffer.allocate(record.encodedSize());
+    record.writeTo(buffer);
+    c.archiveStatement.setString(1, gameId);
+    c.archiveStatement.setLong(2, System.currentTimeMillis());
+    c.archiveStatement.setBytes(3, buffer.array());
   }
-  
+
   /**
-   * Remove the GameBoard from the database.
+   * Remove the GameBoard and its move log from the database, along with any archived copy.
+   * @param gameId The ID of the game.
    * @throws SQLException An exception thrown when the GameBoard is deleted from the table.
    */
-  public void unset() throws SQLException {
-    // Create the table to store the gameboard
-    Statement statement = connection.createStatement();
-    String sql = "DELETE FROM " + GAMEBOARD_TABLE_NAME + " WHERE ID=" + GAMEBOARD_ROW_ID + ";";
-    statement.executeUpdate(sql);
-    
-    // Clean up
-    statement.close();
+  @Override
+  public void unset(String gameId) throws SQLException {
+    final ThreadConnection c = connection();
+    inTransaction(() -> {
+      c.unsetStatement.setString(1, gameId);
+      c.unsetStatement.executeUpdate();
+      c.unsetMovesStatement.setString(1, gameId);
+      c.unsetMovesStatement.executeUpdate();
+      c.unsetArchivedStatement.setString(1, gameId);
+      c.unsetArchivedStatement.executeUpdate();
+    });
+  }
+
+  /**
+   * Gets the ID of every game, live or archived, without reading the games themselves.
+   * @return The game IDs.
+   * @throws SQLException An exception thrown when the IDs are retrieved from the tables.
+   */
+  List<String> gameIds() throws SQLException {
+    final String sql = "SELECT GAME_ID FROM " + GAMES_TABLE_NAME
+        + " UNION SELECT GAME_ID FROM " + ARCHIVE_TABLE_NAME + ";";
+    final List<String> gameIds = new ArrayList<>();
+    try (PreparedStatement statement = connection().connection.prepareStatement(sql)) {
+      statement.setFetchSize(SCAN_FETCH_SIZE);
+      try (ResultSet rs = statement.executeQuery()) {
+        while (rs.next()) {
+          gameIds.add(rs.getString("game_id"));
+        }
+      }
+    }
+    return gameIds;
+  }
+
+  /**
+   * Copies the rows of a game from another database as they are, replacing the game's rows in
+   * this one. The snapshot, the move log and the archived record are all copied, so the game
+   * keeps its whole history.
+   * @param source The database to copy the game from.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the rows are read or written.
+   */
+  void copyGame(Database source, String gameId) throws SQLException {
+    final Connection from = source.connection().connection;
+    final ThreadConnection c = connection();
+    inTransaction(() -> {
+      c.unsetStatement.setString(1, gameId);
+      c.unsetStatement.executeUpdate();
+      c.unsetMovesStatement.setString(1, gameId);
+      c.unsetMovesStatement.executeUpdate();
+      c.unsetArchivedStatement.setString(1, gameId);
+      c.unsetArchivedStatement.executeUpdate();
+      for (String table : new String[] {GAMES_TABLE_NAME, MOVES_TABLE_NAME, ARCHIVE_TABLE_NAME}) {
+        copyRows(from, c.connection, table, gameId);
+      }
+    });
+  }
+
+  /**
+   * Copies the rows of a game in one table between two databases of the same schema.
+   * @param from   The connection to the database to copy from.
+   * @param to     The connection to the database to copy to.
+   * @param table  The name of the table.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the rows are read or written.
+   */
+  private static void copyRows(Connection from, Connection to, String table, String gameId)
+      throws SQLException {
+    try (PreparedStatement select = from.prepareStatement(
+        "SELECT * FROM " + table + " WHERE GAME_ID=?;")) {
+      select.setString(1, gameId);
+      try (ResultSet rs = select.executeQuery()) {
+        final ResultSetMetaData meta = rs.getMetaData();
+        final int columns = meta.getColumnCount();
+        final List<String> names = new ArrayList<>();
+        for (int i = 1; i <= columns; i++) {
+          names.add(meta.getColumnName(i));
+        }
+        final String sql = "INSERT INTO " + table + " (" + String.join(", ", names)
+            + ") VALUES (" + String.join(", ", Collections.nCopies(columns, "?")) + ");";
+        try (PreparedStatement insert = to.prepareStatement(sql)) {
+          while (rs.next()) {
+            for (int i = 1; i <= columns; i++) {
+              insert.setObject(i, rs.getObject(i));
+            }
+            insert.executeUpdate();
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the given work in a single transaction, committing once at the end.
+   * The transaction holds the write lock, so writes from other threads wait for it to commit.
+   * @param transaction The work to run.
+   * @throws SQLException An exception thrown by the work or by the commit, after rolling back.
+   */
+  @Override
+  public void inTransaction(Transaction transaction) throws SQLException {
+    final Connection connection = connection().connection;
+    writeLock.lock();
+    try {
+      if (!connection.getAutoCommit()) {
+        // Already inside a transaction, which commits the work
+        transaction.run();
+        return;
+      }
+      connection.setAutoCommit(false);
+      try {
+        transaction.run();
+        connection.commit();
+      } catch (SQLException e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(true);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Gets the connection of the current thread, opening it on first use.
+   * Connections left behind by threads that have died are closed along the way.
+   * @return The connection of the current thread.
+   * @throws SQLException An exception thrown when opening the connection or if the database is
+   *     closed.
+   */
+  private ThreadConnection connection() throws SQLException {
+    ThreadConnection c = threadConnection.get();
+    if (c != null) {
+      return c;
+    }
+    if (closed) {
+      throw new SQLException("Database is closed");
+    }
+    c = new ThreadConnection(url);
+    threadConnection.set(c);
+    connections.put(Thread.currentThread(), c);
+    closeDeadConnections();
+    return c;
   }
-  
+
+  /**
+   * Closes the connections of threads that are no longer alive.
+   */
+  private void closeDeadConnections() {
+    final Iterator<Map.Entry<Thread, ThreadConnection>> it = connections.entrySet().iterator();
+    while (it.hasNext()) {
+      final Map.Entry<Thread, ThreadConnection> entry = it.next();
+      if (!entry.getKey().isAlive()) {
+        it.remove();
+        try {
+          entry.getValue().close();
+        } catch (SQLException e) {
+          e.printStackTrace();
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the number of open connections, one per thread that has used the database.
+   * @return The number of open connections.
+   */
+  public int getConnectionCount() {
+    return connections.size();
+  }
+
+  /**
+   * Close the prepared statements and the connection of every thread.
+   * @throws SQLException An exception thrown when closing a connection.
+   */
+  @Override
+  public void close() throws SQLException {
+    closed = true;
+    writeLock.lock();
+    try {
+      SQLException failure = null;
+      for (ThreadConnection c : connections.values()) {
+        try {
+          c.close();
+        } catch (SQLException e) {
+          failure = e;
+        }
+      }
+      connections.clear();
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
 }
@@ -0,0 +1,102 @@
+package controllers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * A GameStore that keeps every game in memory and appends each committed write to a journal
+ * file, one JSON line per write. The journal is replayed when the store is opened.
+ */
+public class FileJournalGameStore extends InMemoryGameStore {
+
+  // Journal used by the "journal" store
+  public static final String JOURNAL_NAME = "tictactoe.journal";
+
+  private static final Gson GSON = new Gson();
+
+  private final FileChannel channel;
+
+  /**
+   * Opens the journal, replaying every complete write in it.
+   * A torn write at the end of the journal, left by a crash, is truncated.
+   * @param fileName The path of the journal file.
+   * @throws SQLException An exception thrown when the journal cannot be read or opened.
+   */
+  public FileJournalGameStore(String fileName) throws SQLException {
+    final Path path = Paths.get(fileName);
+    try {
+      final byte[] journal = Files.exists(path) ? Files.readAllBytes(path) : new byte[0];
+      final long length = replay(journal);
+      channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      channel.truncate(length);
+      channel.position(length);
+    } catch (IOException e) {
+      throw new SQLException("Journal cannot be opened: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Replays the complete lines of the journal.
+   * @param journal The contents of the journal.
+   * @return The length of the journal up to the end of the last complete write.
+   */
+  private long replay(byte[] journal) {
+    int start = 0;
+    for (int end = 0; end < journal.length; end++) {
+      if (journal[end] != '\n') {
+        continue;
+      }
+      final String line = new String(journal, start, end - start, StandardCharsets.UTF_8);
+      final Change change;
+      try {
+        change = GSON.fromJson(line, Change.class);
+      } catch (JsonParseException e) {
+        break;
+      }
+      apply(change);
+      start = end + 1;
+    }
+    return start;
+  }
+
+  @Override
+  protected long commit(List<Change> changes) throws SQLException {
+    final StringBuilder lines = new StringBuilder();
+    for (Change change : changes) {
+      lines.append(GSON.toJson(change)).append('\n');
+    }
+
+    // Write and sync the whole transaction before applying it
+    final ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(false);
+    } catch (IOException e) {
+      throw new SQLException("Journal cannot be written: " + e.getMessage(), e);
+    }
+    return super.commit(changes);
+  }
+
+  @Override
+  public void close() throws SQLException {
+    super.close();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      throw new SQLException("Journal cannot be closed: " + e.getMessage(), e);
+    }
+  }
+
+}
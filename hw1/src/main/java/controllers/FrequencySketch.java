@@ -0,0 +1,101 @@
+package controllers;
+
+/**
+ * A count-min sketch of how often keys were seen, with 4-bit counters that are halved
+ * periodically so old popularity fades. Four counters are kept per key, and its frequency is
+ * the smallest of them. Not thread-safe.
+ */
+final class FrequencySketch {
+
+  // Seeds of the four hashes of a key
+  private static final long[] SEEDS = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  // Counters at half of their value, as each counter is shifted right once
+  private static final long HALF_MASK = 0x7777777777777777L;
+
+  // Sixteen 4-bit counters per element
+  private final long[] table;
+
+  // Increments between two halvings of every counter
+  private final int sampleSize;
+
+  private int additions;
+
+  /**
+   * Creates a sketch sized for the given number of keys.
+   * @param capacity The number of keys expected to be tracked.
+   */
+  FrequencySketch(int capacity) {
+    int length = 16;
+    while (length < capacity && length < (1 << 30)) {
+      length <<= 1;
+    }
+    table = new long[length];
+    sampleSize = (int) Math.min(10L * Math.max(capacity, 1), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Gets the estimated number of times the key was seen recently.
+   * @param hash The hash of the key.
+   * @return The frequency, at most 15.
+   */
+  int frequency(int hash) {
+    int frequency = 15;
+    for (int i = 0; i < SEEDS.length; i++) {
+      final long h = spread(hash, i);
+      frequency = Math.min(frequency, (int) ((table[index(h)] >>> offset(h, i)) & 15));
+    }
+    return frequency;
+  }
+
+  /**
+   * Records that the key was seen, halving every counter once enough keys were recorded.
+   * @param hash The hash of the key.
+   */
+  void increment(int hash) {
+    boolean added = false;
+    for (int i = 0; i < SEEDS.length; i++) {
+      final long h = spread(hash, i);
+      final int index = index(h);
+      final int offset = offset(h, i);
+      if (((table[index] >>> offset) & 15) < 15) {
+        table[index] += 1L << offset;
+        added = true;
+      }
+    }
+    if (added && ++additions == sampleSize) {
+      for (int i = 0; i < table.length; i++) {
+        table[i] = (table[i] >>> 1) & HALF_MASK;
+      }
+      additions /= 2;
+    }
+  }
+
+  /**
+   * Mixes the hash of a key with the seed of one of its counters.
+   * @param hash The hash of the key.
+   * @param i    The index of the counter.
+   * @return The mixed hash.
+   */
+  private static long spread(int hash, int i) {
+    long h = (hash + SEEDS[i]) * SEEDS[i];
+    return h ^ (h >>> 32);
+  }
+
+  private int index(long h) {
+    return (int) h & (table.length - 1);
+  }
+
+  /**
+   * Gets the bit offset of a counter within its element. Each of the four counters of a key
+   * uses its own quarter of the element.
+   * @param h The mixed hash.
+   * @param i The index of the counter.
+   * @return The bit offset.
+   */
+  private static int offset(long h, int i) {
+    return ((i << 2) + (int) ((h >>> 40) & 3)) << 2;
+  }
+
+}
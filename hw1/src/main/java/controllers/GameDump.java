@@ -0,0 +1,214 @@
+package controllers;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import models.Engine;
+import models.GameBoard;
+
+/**
+ * Dumps every game of a database to newline-delimited JSON and loads such a dump back, for
+ * backups and analytics. Each line holds one game: its ID, the name of its engine, and its
+ * gameboard as the server serves it. Games stream through in both directions, so a dump never
+ * has to fit in memory.
+ *
+ * <p>The tool reads and writes one SQLite database. A sharded deployment is dumped one shard
+ * file at a time, and a shard's dump is loaded back into the same shard, since the shard of a
+ * game follows from its ID.
+ */
+public final class GameDump {
+
+  // File dumped to and loaded from by default
+  public static final String DUMP_NAME = "games.ndjson";
+
+  // Games loaded per transaction
+  private static final int IMPORT_BATCH_SIZE = 500;
+
+  private static final Gson GSON = new Gson();
+
+  /**
+   * A game as it appears on one line of a dump.
+   */
+  private static class DumpedGame {
+
+    private String gameId;
+
+    private String engine;
+
+    private GameBoard board;
+
+  }
+
+  private GameDump() {
+  }
+
+  /** Main method of the dump tool.
+   * @param args Command line arguments: export or import, then --file=PATH for the dump and
+   *             --database=PATH for the database
+   * @throws IOException  An exception thrown when the dump cannot be read or written.
+   * @throws SQLException An exception thrown when the database cannot be read or written.
+   */
+  public static void main(final String[] args) throws IOException, SQLException {
+    String file = DUMP_NAME;
+    String databaseName = Database.DATABASE_NAME;
+    for (String arg : args) {
+      if (arg.startsWith("--file=")) {
+        file = arg.substring("--file=".length());
+      } else if (arg.startsWith("--database=")) {
+        databaseName = arg.substring("--database=".length());
+      }
+    }
+    final String command = args.length > 0 ? args[0] : "";
+    final Database database = new Database(databaseName);
+    try {
+      if ("export".equals(command)) {
+        try (Writer out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+          System.out.println("Exported " + exportGames(database, out) + " games to " + file);
+        }
+      } else if ("import".equals(command)) {
+        try (Reader in = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+          System.out.println("Imported " + importGames(database, in) + " games from " + file);
+        }
+      } else {
+        System.out.println("Usage: GameDump export|import [--file=PATH] [--database=PATH]");
+      }
+    } finally {
+      database.close();
+    }
+  }
+
+  /**
+   * Writes every game of the database, live or archived, one JSON object per line.
+   * @param database The database to read.
+   * @param out      The writer of the dump, which is flushed but left open.
+   * @return The number of games written.
+   * @throws IOException  An exception thrown when the dump cannot be written.
+   * @throws SQLException An exception thrown when the games cannot be read.
+   */
+  public static int exportGames(Database database, Writer out) throws IOException, SQLException {
+    final BufferedWriter buffered = new BufferedWriter(out);
+    final JsonWriter writer = new JsonWriter(buffered);
+
+    // Allow one top-level object per line
+    writer.setLenient(true);
+    final int[] count = new int[1];
+    try {
+      database.loadAll((gameId, board) -> {
+        try {
+          writer.beginObject();
+          writer.name("gameId").value(gameId);
+          writer.name("engine").value(board.getEngine() != null
+              ? board.getEngine().getName() : null);
+          writer.name("board");
+          GSON.toJson(board, GameBoard.class, writer);
+          writer.endObject();
+          writer.flush();
+          buffered.write('\n');
+          count[0]++;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    buffered.flush();
+    return count[0];
+  }
+
+  /**
+   * Reads games written by exportGames into the database, replacing games with the same ID.
+   * Games are written in batches, each in one transaction, and finished games are archived.
+   * @param database The database to write.
+   * @param in       The reader of the dump, which is left open.
+   * @return The number of games read.
+   * @throws IOException  An exception thrown when the dump cannot be read or holds an invalid
+   *     line.
+   * @throws SQLException An exception thrown when the games cannot be written.
+   */
+  public static int importGames(Database database, Reader in) throws IOException, SQLException {
+    final BufferedReader reader = new BufferedReader(in);
+    final List<DumpedGame> batch = new ArrayList<>();
+    int count = 0;
+    int lineNumber = 0;
+    String line;
+    while ((line = reader.readLine()) != null) {
+      lineNumber++;
+      if (line.isBlank()) {
+        continue;
+      }
+      final DumpedGame game;
+      try {
+        game = GSON.fromJson(line, DumpedGame.class);
+      } catch (JsonParseException e) {
+        throw new IOException("Invalid game on line " + lineNumber, e);
+      }
+      if (game == null || game.gameId == null || game.board == null) {
+        throw new IOException("Invalid game on line " + lineNumber);
+      }
+      game.board = decode(game, lineNumber);
+      batch.add(game);
+      if (batch.size() == IMPORT_BATCH_SIZE) {
+        count += writeBatch(database, batch);
+      }
+    }
+    return count + writeBatch(database, batch);
+  }
+
+  /**
+   * Rebuilds a dumped gameboard through a GameRecord, as the stores rebuild the games they load.
+   * Gson only fills in the serialized fields, so the board's move log, version and engine are
+   * set up here before the game is written or played.
+   * @param game       The dumped game.
+   * @param lineNumber The line of the dump the game was read from.
+   * @return The rebuilt gameboard, with its engine.
+   * @throws IOException An exception thrown when the gameboard is incomplete or inconsistent.
+   */
+  private static GameBoard decode(DumpedGame game, int lineNumber) throws IOException {
+    final GameBoard board = game.board;
+    if (board.getP1() == null || board.getBoardState() == null) {
+      throw new IOException("Invalid game on line " + lineNumber);
+    }
+    board.setEngine(Engine.forName(game.engine));
+    try {
+      return GameRecord.of(board).restore();
+    } catch (SQLException | RuntimeException e) {
+      throw new IOException("Invalid game on line " + lineNumber, e);
+    }
+  }
+
+  /**
+   * Writes a batch of games in one transaction of batched inserts, then clears the batch.
+   * A game listed more than once in the batch is written as its last line has it.
+   * @param database The database to write.
+   * @param batch    The games.
+   * @return The number of games read.
+   * @throws SQLException An exception thrown when the games cannot be written.
+   */
+  private static int writeBatch(Database database, List<DumpedGame> batch) throws SQLException {
+    final Map<String, GameBoard> games = new LinkedHashMap<>();
+    for (DumpedGame game : batch) {
+      games.remove(game.gameId);
+      games.put(game.gameId, game.board);
+    }
+    database.setAll(games);
+    final int written = batch.size();
+    batch.clear();
+    return written;
+  }
+
+}
@@ -0,0 +1,243 @@
+package controllers;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.Arrays;
+import models.Engine;
+import models.GameBoard;
+import models.Player;
+
+/**
+ * An immutable copy of a stored game: a snapshot of the gameboard followed by the moves played
+ * since, as cells x * size + y.
+ */
+class GameRecord {
+
+  private final Player p1;
+  private final Player p2;
+  private final boolean gameStarted;
+  private final int turn;
+  private final char[][] boardState;
+  private final int winner;
+  private final boolean isDraw;
+  private final int winLength;
+  private final String engine;
+
+  // Number of moves played before the snapshot
+  private final int snapshotSeq;
+
+  // Moves played after the snapshot, in order
+  private final int[] moves;
+
+  private GameRecord(GameBoard gameboard) {
+    p1 = copy(gameboard.getP1());
+    p2 = copy(gameboard.getP2());
+    gameStarted = gameboard.isGameStarted();
+    turn = gameboard.getTurn();
+    boardState = new char[gameboard.getSize()][];
+    for (int i = 0; i < boardState.length; i++) {
+      boardState[i] = gameboard.getBoardState()[i].clone();
+    }
+    winner = gameboard.getWinner();
+    isDraw = gameboard.isDraw();
+    winLength = gameboard.getWinLength();
+    engine = gameboard.getEngine() != null ? gameboard.getEngine().getName() : null;
+    snapshotSeq = gameboard.getMoveCount();
+    moves = new int[0];
+  }
+
+  private GameRecord(GameRecord snapshot, int[] moves) {
+    this(snapshot.p1, snapshot.p2, snapshot.gameStarted, snapshot.turn, snapshot.boardState,
+        snapshot.winner, snapshot.isDraw, snapshot.winLength, snapshot.engine,
+        snapshot.snapshotSeq, moves);
+  }
+
+  private GameRecord(Player p1, Player p2, boolean gameStarted, int turn, char[][] boardState,
+      int winner, boolean isDraw, int winLength, String engine, int snapshotSeq, int[] moves) {
+    this.p1 = p1;
+    this.p2 = p2;
+    this.gameStarted = gameStarted;
+    this.turn = turn;
+    this.boardState = boardState;
+    this.winner = winner;
+    this.isDraw = isDraw;
+    this.winLength = winLength;
+    this.engine = engine;
+    this.snapshotSeq = snapshotSeq;
+    this.moves = moves;
+  }
+
+  /**
+   * Snapshots the gameboard.
+   * @param gameboard The gameboard.
+   * @return A record of the gameboard with no moves after the snapshot.
+   */
+  static GameRecord of(GameBoard gameboard) {
+    return new GameRecord(gameboard);
+  }
+
+  /**
+   * Gets the moves played on the gameboard since the given move.
+   * @param gameboard The gameboard the moves were played on.
+   * @param fromSeq   The sequence number of the last move already stored.
+   * @return The moves as cells, in order.
+   */
+  static int[] movesOf(GameBoard gameboard, int fromSeq) {
+    final int[] cells = new int[Math.max(0, gameboard.getMoveCount() - fromSeq)];
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = gameboard.getMove(fromSeq + 1 + i);
+    }
+    return cells;
+  }
+
+  /**
+   * Appends moves to the record, skipping any it already holds.
+   * @param fromSeq The sequence number of the move before the first of the cells.
+   * @param cells   The moves as cells, in order.
+   * @return A record with the moves appended.
+   */
+  GameRecord withMoves(int fromSeq, int[] cells) {
+    final int skip = Math.max(0, getMoveCount() - fromSeq);
+    if (skip >= cells.length) {
+      return this;
+    }
+    final int[] appended = Arrays.copyOf(moves, moves.length + cells.length - skip);
+    System.arraycopy(cells, skip, appended, moves.length, cells.length - skip);
+    return new GameRecord(this, appended);
+  }
+
+  /**
+   * Gets the number of moves in the record.
+   * @return The number of moves played.
+   */
+  int getMoveCount() {
+    return snapshotSeq + moves.length;
+  }
+
+  /**
+   * Checks if the snapshot is of a game that is still being played.
+   * Moves after the snapshot are not considered.
+   * @return True if the game was open or in progress when snapshotted, false otherwise.
+   */
+  boolean isActive() {
+    return winner == 0 && !isDraw;
+  }
+
+  /**
+   * Rebuilds the gameboard by replaying the moves onto the snapshot, then attaching its engine.
+   * @return A new gameboard.
+   * @throws SQLException An exception thrown if a move cannot be replayed.
+   */
+  GameBoard restore() throws SQLException {
+    final char[][] state = new char[boardState.length][];
+    for (int i = 0; i < state.length; i++) {
+      state[i] = boardState[i].clone();
+    }
+    final GameBoard gameboard = new GameBoard(copy(p1), copy(p2), gameStarted, turn, state,
+        winner, isDraw, winLength);
+    final int size = gameboard.getSize();
+    for (int i = 0; i < moves.length; i++) {
+      final Player player = (snapshotSeq + i + 1) % 2 == 1
+          ? gameboard.getP1() : gameboard.getP2();
+      try {
+        gameboard.playTurn(player, moves[i] / size, moves[i] % size);
+      } catch (Exception e) {
+        throw new SQLException("Move log cannot be replayed: " + e.getMessage(), e);
+      }
+    }
+    gameboard.setEngine(Engine.forName(engine));
+    return gameboard;
+  }
+
+  /**
+   * Gets the number of bytes writeTo uses.
+   * @return The encoded size of the record.
+   */
+  int encodedSize() {
+    final int engineLength = engine != null ? engine.getBytes(StandardCharsets.UTF_8).length : 0;
+    return 14 + engineLength + boardState.length * boardState.length + 2 * moves.length;
+  }
+
+  /**
+   * Writes the record in binary: the players, the flags, the board one byte per cell,
+   * then the moves since the snapshot.
+   * @param buffer The buffer to write to.
+   */
+  void writeTo(ByteBuffer buffer) {
+    final int size = boardState.length;
+    buffer.put((byte) size);
+    buffer.put((byte) winLength);
+    buffer.put((byte) ((gameStarted ? 1 : 0) | (isDraw ? 2 : 0) | (p2 != null ? 4 : 0)));
+    buffer.put((byte) turn);
+    buffer.put((byte) winner);
+    buffer.put((byte) p1.getType());
+    buffer.put((byte) (p2 != null ? p2.getType() : 0));
+    final byte[] engineBytes = engine != null ? engine.getBytes(StandardCharsets.UTF_8)
+        : new byte[0];
+    buffer.put((byte) engineBytes.length);
+    buffer.put(engineBytes);
+    for (char[] row : boardState) {
+      for (char cell : row) {
+        buffer.put((byte) cell);
+      }
+    }
+    buffer.putInt(snapshotSeq);
+    buffer.putShort((short) moves.length);
+    for (int move : moves) {
+      buffer.putShort((short) move);
+    }
+  }
+
+  /**
+   * Reads a record written by writeTo.
+   * @param buffer The buffer to read from.
+   * @return The record.
+   * @throws SQLException An exception thrown if the buffer does not hold a valid record.
+   */
+  static GameRecord readFrom(ByteBuffer buffer) throws SQLException {
+    try {
+      final int size = buffer.get();
+      final int winLength = buffer.get();
+      final int flags = buffer.get();
+      final int turn = buffer.get();
+      final int winner = buffer.get();
+      final Player p1 = new Player((char) buffer.get(), 1);
+      final char p2Type = (char) buffer.get();
+      final Player p2 = (flags & 4) != 0 ? new Player(p2Type, 2) : null;
+      final byte[] engineBytes = new byte[buffer.get()];
+      buffer.get(engineBytes);
+      final String engine = engineBytes.length > 0
+          ? new String(engineBytes, StandardCharsets.UTF_8) : null;
+      if (size < 0) {
+        throw new SQLException("Invalid board size: " + size);
+      }
+      final char[][] boardState = new char[size][size];
+      for (char[] row : boardState) {
+        for (int j = 0; j < size; j++) {
+          row[j] = (char) buffer.get();
+        }
+      }
+      final int snapshotSeq = buffer.getInt();
+      final int[] moves = new int[buffer.getShort()];
+      for (int i = 0; i < moves.length; i++) {
+        moves[i] = buffer.getShort();
+      }
+      return new GameRecord(p1, p2, (flags & 1) != 0, turn, boardState, winner,
+          (flags & 2) != 0, winLength, engine, snapshotSeq, moves);
+    } catch (BufferUnderflowException | NegativeArraySizeException e) {
+      throw new SQLException("Truncated game record", e);
+    }
+  }
+
+  /**
+   * Copies a player, since players are mutable.
+   * @param player The player, or null.
+   * @return The copy, or null.
+   */
+  private static Player copy(Player player) {
+    return player != null ? new Player(player.getType(), player.getId()) : null;
+  }
+
+}
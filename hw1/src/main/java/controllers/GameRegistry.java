@@ -0,0 +1,443 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+
+/**
+ * A concurrent registry of the GameBoards hosted by this node, keyed by game ID. Games are
+ * looked up, registered and removed without a shared lock; only a bounded registry takes one,
+ * to keep its eviction order.
+ * A bounded registry keeps only the games in use most, evicting the others by W-TinyLFU: new
+ * games enter a small LRU window, and a game leaving the window replaces the least recently
+ * used game of the main area only if it was used more often. Evicted games are handed to the
+ * eviction listener if they are dirty, so they can be written back. A game leaves the registry
+ * under its gameboard's lock, after it is written back, so a request on the game finishes its
+ * write before the game can be loaded again from the store.
+ */
+public class GameRegistry {
+
+  // Share of a bounded registry taken by the window of new games, in percent
+  private static final int WINDOW_PERCENT = 1;
+
+  // Share of the main area taken by games used more than once since they were admitted
+  private static final int PROTECTED_PERCENT = 80;
+
+  private final ConcurrentMap<String, GameBoard> games = new ConcurrentHashMap<>();
+
+  // When each game was last registered or looked up, in nanoseconds
+  private final ConcurrentMap<String, Long> lastUsed = new ConcurrentHashMap<>();
+
+  // Games whose latest state may not be stored yet
+  private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+
+  // Most games kept, or 0 if the registry is unbounded
+  private final int capacity;
+
+  private final BiConsumer<String, GameBoard> onEvict;
+
+  // Guards the eviction order and the frequency sketch of a bounded registry
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // Eviction order of a bounded registry, least recently used first in each area
+  private final LinkedHashMap<String, GameBoard> windowOrder = new LinkedHashMap<>();
+  private final LinkedHashMap<String, GameBoard> probationOrder = new LinkedHashMap<>();
+  private final LinkedHashMap<String, GameBoard> protectedOrder = new LinkedHashMap<>();
+
+  private final FrequencySketch sketch;
+
+  private final int windowCapacity;
+
+  private final int protectedCapacity;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  private final AtomicLong writeBacks = new AtomicLong();
+
+  /**
+   * Creates an unbounded registry.
+   */
+  public GameRegistry() {
+    this(0, (gameId, board) -> { });
+  }
+
+  /**
+   * Creates a registry that keeps at most the given number of games.
+   * @param capacity The most games kept, or 0 for no bound.
+   * @param onEvict  The listener that writes back each dirty game evicted.
+   */
+  public GameRegistry(int capacity, BiConsumer<String, GameBoard> onEvict) {
+    this.capacity = capacity;
+    this.onEvict = onEvict;
+    sketch = capacity > 0 ? new FrequencySketch(capacity) : null;
+    windowCapacity = Math.max(1, capacity * WINDOW_PERCENT / 100);
+    protectedCapacity = (capacity - windowCapacity) * PROTECTED_PERCENT / 100;
+  }
+
+  /**
+   * Registers a GameBoard under the given game ID, replacing any previous game.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard to register.
+   */
+  public void put(String gameId, GameBoard board) {
+    lastUsed.put(gameId, System.nanoTime());
+    final GameBoard previous = games.put(gameId, board);
+    if (capacity == 0) {
+      return;
+    }
+    final List<Map.Entry<String, GameBoard>> evicted = new ArrayList<>();
+    lock.lock();
+    try {
+      if (previous != null) {
+        removeFromOrder(gameId, previous);
+      }
+      admit(gameId, board, evicted);
+    } finally {
+      lock.unlock();
+    }
+    writeBack(evicted);
+  }
+
+  /**
+   * Registers a GameBoard under the given game ID unless a game is already registered there.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard to register.
+   * @return The gameboard now registered under the game ID.
+   */
+  public GameBoard putIfAbsent(String gameId, GameBoard board) {
+    lastUsed.put(gameId, System.nanoTime());
+    final GameBoard existing = games.putIfAbsent(gameId, board);
+    if (existing != null) {
+      return existing;
+    } else if (capacity == 0) {
+      return board;
+    }
+    final List<Map.Entry<String, GameBoard>> evicted = new ArrayList<>();
+    lock.lock();
+    try {
+      admit(gameId, board, evicted);
+    } finally {
+      lock.unlock();
+    }
+    writeBack(evicted);
+    return board;
+  }
+
+  /**
+   * Gets the GameBoard registered under the given game ID.
+   * @param gameId The ID of the game.
+   * @return The gameboard or null.
+   */
+  public GameBoard get(String gameId) {
+    final GameBoard board = games.get(gameId);
+    if (board == null) {
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    lastUsed.put(gameId, System.nanoTime());
+
+    // Record the use unless another thread holds the lock, as a lost use only skews the order
+    if (capacity > 0 && lock.tryLock()) {
+      try {
+        recordAccess(gameId);
+      } finally {
+        lock.unlock();
+      }
+    }
+    return board;
+  }
+
+  /**
+   * Checks if the given GameBoard is still registered under the given game ID, without
+   * counting a lookup. A game may be evicted or replaced while a request waits for its lock.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard.
+   * @return True if the gameboard is registered under the game ID.
+   */
+  public boolean contains(String gameId, GameBoard board) {
+    return games.get(gameId) == board;
+  }
+
+  /**
+   * Removes the GameBoard registered under the given game ID.
+   * @param gameId The ID of the game.
+   * @return The removed gameboard or null.
+   */
+  public GameBoard remove(String gameId) {
+    dirty.remove(gameId);
+    lastUsed.remove(gameId);
+    final GameBoard board = games.remove(gameId);
+    if (board != null && capacity > 0) {
+      forgetOrder(gameId, board);
+    }
+    return board;
+  }
+
+  /**
+   * Removes the given GameBoard if it is still registered under the given game ID.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard to remove.
+   * @return True if the gameboard was removed.
+   */
+  public boolean remove(String gameId, GameBoard board) {
+    if (!games.remove(gameId, board)) {
+      return false;
+    }
+    dirty.remove(gameId);
+    lastUsed.remove(gameId);
+    if (capacity > 0) {
+      forgetOrder(gameId, board);
+    }
+    return true;
+  }
+
+  /**
+   * Passes every registered game to the given action. Games registered or removed meanwhile
+   * may or may not be seen.
+   * @param action The action taking each game ID and its gameboard.
+   */
+  public void forEach(BiConsumer<String, GameBoard> action) {
+    games.forEach(action);
+  }
+
+  /**
+   * Gets how long ago a game was last registered or looked up.
+   * @param gameId The ID of the game.
+   * @return The idle time in milliseconds, or 0 if the game is not registered.
+   */
+  public long getIdleMillis(String gameId) {
+    final Long used = lastUsed.get(gameId);
+    return used == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - used);
+  }
+
+  /**
+   * Removes every GameBoard from the registry.
+   */
+  public void clear() {
+    lock.lock();
+    try {
+      games.clear();
+      lastUsed.clear();
+      dirty.clear();
+      windowOrder.clear();
+      probationOrder.clear();
+      protectedOrder.clear();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Marks whether the latest state of a game may not be stored yet. A dirty game is handed to
+   * the eviction listener when it is evicted.
+   * @param gameId  The ID of the game.
+   * @param isDirty True if the game's latest state may not be stored.
+   */
+  public void setDirty(String gameId, boolean isDirty) {
+    if (isDirty) {
+      dirty.add(gameId);
+    } else {
+      dirty.remove(gameId);
+    }
+  }
+
+  /**
+   * Checks whether the latest state of a game may not be stored yet.
+   * @param gameId The ID of the game.
+   * @return True if the game is dirty.
+   */
+  public boolean isDirty(String gameId) {
+    return dirty.contains(gameId);
+  }
+
+  /**
+   * Adds a new game to the window, moving the oldest game of a full window into the main area
+   * if it was used more often than the game it would evict there.
+   * @param gameId  The ID of the game.
+   * @param board   The gameboard.
+   * @param evicted The list that collects the evicted dirty games.
+   */
+  private void admit(String gameId, GameBoard board, List<Map.Entry<String, GameBoard>> evicted) {
+    if (games.get(gameId) != board) {
+      // The board was replaced or removed before it took its place in the order
+      return;
+    }
+    sketch.increment(gameId.hashCode());
+    windowOrder.put(gameId, board);
+    if (windowOrder.size() <= windowCapacity) {
+      return;
+    }
+    final Map.Entry<String, GameBoard> candidate = pollFirst(windowOrder);
+    if (probationOrder.size() + protectedOrder.size() < capacity - windowCapacity) {
+      probationOrder.put(candidate.getKey(), candidate.getValue());
+      return;
+    } else if (probationOrder.isEmpty() && protectedOrder.isEmpty()) {
+      // A registry with no main area keeps only the window
+      evict(candidate, evicted);
+      return;
+    }
+    final LinkedHashMap<String, GameBoard> victims =
+        probationOrder.isEmpty() ? protectedOrder : probationOrder;
+    final String victim = victims.keySet().iterator().next();
+    if (sketch.frequency(candidate.getKey().hashCode()) > sketch.frequency(victim.hashCode())) {
+      evict(pollFirst(victims), evicted);
+      probationOrder.put(candidate.getKey(), candidate.getValue());
+    } else {
+      evict(candidate, evicted);
+    }
+  }
+
+  /**
+   * Records a use of a registered game, promoting it to the protected area on its second use
+   * in the main area.
+   * @param gameId The ID of the game.
+   */
+  private void recordAccess(String gameId) {
+    sketch.increment(gameId.hashCode());
+    GameBoard board = windowOrder.remove(gameId);
+    if (board != null) {
+      windowOrder.put(gameId, board);
+      return;
+    }
+    board = protectedOrder.remove(gameId);
+    if (board != null) {
+      protectedOrder.put(gameId, board);
+      return;
+    }
+    board = probationOrder.remove(gameId);
+    if (board != null) {
+      protectedOrder.put(gameId, board);
+      if (protectedOrder.size() > protectedCapacity) {
+        // Demote the least recently used protected game
+        final Map.Entry<String, GameBoard> demoted = pollFirst(protectedOrder);
+        probationOrder.put(demoted.getKey(), demoted.getValue());
+      }
+    }
+  }
+
+  /**
+   * Takes an evicted game out of the eviction order, collecting it to be removed.
+   * @param entry   The game ID and gameboard.
+   * @param evicted The list that collects the evicted games.
+   */
+  private void evict(Map.Entry<String, GameBoard> entry,
+      List<Map.Entry<String, GameBoard>> evicted) {
+    evictions.incrementAndGet();
+    evicted.add(entry);
+  }
+
+  /**
+   * Removes the evicted games, outside of the lock. Each game is removed under its gameboard's
+   * lock, once any request holding the lock is done, and a dirty game is handed to the
+   * eviction listener before it is removed, so a reload reads its latest state.
+   * @param evicted The evicted games.
+   */
+  private void writeBack(List<Map.Entry<String, GameBoard>> evicted) {
+    for (Map.Entry<String, GameBoard> entry : evicted) {
+      final String gameId = entry.getKey();
+      final GameBoard board = entry.getValue();
+      synchronized (board) {
+        if (games.get(gameId) != board) {
+          // The game was replaced or removed meanwhile
+          continue;
+        }
+        if (dirty.remove(gameId)) {
+          writeBacks.incrementAndGet();
+          onEvict.accept(gameId, board);
+        }
+        games.remove(gameId, board);
+        lastUsed.remove(gameId);
+      }
+    }
+  }
+
+  /**
+   * Takes a removed game out of the eviction order of a bounded registry.
+   * @param gameId The ID of the game.
+   * @param board  The removed gameboard.
+   */
+  private void forgetOrder(String gameId, GameBoard board) {
+    lock.lock();
+    try {
+      removeFromOrder(gameId, board);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes a gameboard out of the eviction order, unless another board of the game took its
+   * place there. The map of games is updated outside the lock, so the order only ever drops
+   * the board it holds.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard.
+   */
+  private void removeFromOrder(String gameId, GameBoard board) {
+    if (!windowOrder.remove(gameId, board) && !probationOrder.remove(gameId, board)) {
+      protectedOrder.remove(gameId, board);
+    }
+  }
+
+  private static Map.Entry<String, GameBoard> pollFirst(LinkedHashMap<String, GameBoard> area) {
+    final Iterator<Map.Entry<String, GameBoard>> it = area.entrySet().iterator();
+    final Map.Entry<String, GameBoard> first = it.next();
+    it.remove();
+    return Map.entry(first.getKey(), first.getValue());
+  }
+
+  /**
+   * Gets the number of registered games.
+   * @return The number of games.
+   */
+  public int size() {
+    return games.size();
+  }
+
+  /**
+   * Gets the number of lookups that found their game.
+   * @return The number of hits.
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of lookups that did not find their game.
+   * @return The number of misses.
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of games evicted to keep the registry within its capacity.
+   * @return The number of evictions.
+   */
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  /**
+   * Gets the number of evicted games handed to the eviction listener to be written back.
+   * @return The number of write-backs.
+   */
+  public long getWriteBackCount() {
+    return writeBacks.get();
+  }
+
+}
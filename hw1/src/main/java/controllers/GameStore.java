@@ -0,0 +1,149 @@
+package controllers;
+
+import java.sql.SQLException;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+
+/**
+ * Durable storage for the GameBoards hosted by this node, keyed by game ID.
+ * Failures of any backend are reported as SQLExceptions.
+ */
+public interface GameStore {
+
+  /**
+   * Work that runs inside a transaction.
+   */
+  interface Transaction {
+
+    /**
+     * Runs the work.
+     * @throws SQLException An exception thrown when a write fails.
+     */
+    void run() throws SQLException;
+
+  }
+
+  // ID of the game stored by the methods without a game ID
+  String DEFAULT_GAME_ID = "0";
+
+  /**
+   * Creates or updates the gameboard as a snapshot.
+   * @param gameId    The ID of the game.
+   * @param gameboard The gameboard to set.
+   * @throws SQLException An exception thrown when the gameboard cannot be stored.
+   */
+  void set(String gameId, GameBoard gameboard) throws SQLException;
+
+  /**
+   * Appends the moves played on the gameboard since the given move.
+   * @param gameId    The ID of the game.
+   * @param gameboard The gameboard the moves were played on.
+   * @param fromSeq   The sequence number of the last move already stored.
+   * @throws SQLException An exception thrown when the moves cannot be stored.
+   */
+  void recordMoves(String gameId, GameBoard gameboard, int fromSeq) throws SQLException;
+
+  /**
+   * Gets the gameboard.
+   * @param gameId The ID of the game.
+   * @return The gameboard or null.
+   * @throws SQLException An exception thrown when the gameboard cannot be read.
+   */
+  GameBoard get(String gameId) throws SQLException;
+
+  /**
+   * Removes the gameboard and its moves.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the gameboard cannot be removed.
+   */
+  void unset(String gameId) throws SQLException;
+
+  /**
+   * Moves a finished game into cold storage, where it can still be read with get.
+   * Stores without a separate archive keep the game where it is.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game cannot be archived.
+   */
+  default void archive(String gameId) throws SQLException {
+  }
+
+  /**
+   * Loads every open or in-progress game.
+   * @param consumer The consumer of each game ID and its gameboard.
+   * @throws SQLException An exception thrown when the games cannot be read.
+   */
+  void loadActive(BiConsumer<String, GameBoard> consumer) throws SQLException;
+
+  /**
+   * Runs the given work in a single transaction, committing once at the end.
+   * @param transaction The work to run.
+   * @throws SQLException An exception thrown by the work or by the commit.
+   */
+  void inTransaction(Transaction transaction) throws SQLException;
+
+  /**
+   * Closes the store.
+   * @throws SQLException An exception thrown when the store cannot be closed.
+   */
+  void close() throws SQLException;
+
+  /**
+   * Creates or updates the default gameboard as a snapshot.
+   * @param gameboard The gameboard to set.
+   * @throws SQLException An exception thrown when the gameboard cannot be stored.
+   */
+  default void set(GameBoard gameboard) throws SQLException {
+    set(DEFAULT_GAME_ID, gameboard);
+  }
+
+  /**
+   * Appends the moves played on the default gameboard since the given move.
+   * @param gameboard The gameboard the moves were played on.
+   * @param fromSeq   The sequence number of the last move already stored.
+   * @throws SQLException An exception thrown when the moves cannot be stored.
+   */
+  default void recordMoves(GameBoard gameboard, int fromSeq) throws SQLException {
+    recordMoves(DEFAULT_GAME_ID, gameboard, fromSeq);
+  }
+
+  /**
+   * Gets the default gameboard.
+   * @return The gameboard or null.
+   * @throws SQLException An exception thrown when the gameboard cannot be read.
+   */
+  default GameBoard get() throws SQLException {
+    return get(DEFAULT_GAME_ID);
+  }
+
+  /**
+   * Removes the default gameboard and its moves.
+   * @throws SQLException An exception thrown when the gameboard cannot be removed.
+   */
+  default void unset() throws SQLException {
+    unset(DEFAULT_GAME_ID);
+  }
+
+  /**
+   * Opens the store with the given name.
+   * @param name The store name: "sqlite", "sharded", "memory", "journal" or "mapped".
+   * @return The store, or null if no store has that name.
+   * @throws SQLException An exception thrown when the store cannot be opened.
+   */
+  static GameStore open(String name) throws SQLException {
+    if ("sqlite".equals(name)) {
+      return new Database();
+    } else if ("sharded".equals(name)) {
+      return new ShardedGameStore(ShardedGameStore.SHARD_DIRECTORY,
+          ShardedGameStore.DEFAULT_SHARD_COUNT);
+    } else if ("memory".equals(name)) {
+      return new InMemoryGameStore();
+    } else if ("journal".equals(name)) {
+      return new FileJournalGameStore(FileJournalGameStore.JOURNAL_NAME);
+    } else if ("mapped".equals(name)) {
+      return new MappedJournalGameStore(MappedJournalGameStore.JOURNAL_DIRECTORY,
+          MappedJournalGameStore.DEFAULT_SEGMENT_SIZE);
+    }
+    return null;
+  }
+
+}
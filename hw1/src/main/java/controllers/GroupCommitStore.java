@@ -0,0 +1,249 @@
+package controllers;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+
+/**
+ * Writes to another GameStore in group commits. Writes from any thread that arrive within a
+ * short window of each other are committed in one transaction by a single committer thread,
+ * and each write returns only once its transaction has committed. Callers must not change a
+ * gameboard while it is being written, which holding its lock across the call ensures.
+ */
+public class GroupCommitStore implements GameStore {
+
+  /**
+   * A write waiting for its group to commit.
+   */
+  private static class PendingCommit {
+
+    private final Transaction work;
+
+    private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+    private PendingCommit(Transaction work) {
+      this.work = work;
+    }
+
+  }
+
+  private final GameStore database;
+
+  private final long windowNanos;
+
+  private final int maxBatchSize;
+
+  private final BlockingQueue<PendingCommit> queue = new LinkedBlockingQueue<>();
+
+  private final Thread committer;
+
+  private volatile boolean closed;
+
+  private final AtomicLong commitCount = new AtomicLong();
+
+  private final AtomicLong writeCount = new AtomicLong();
+
+  /**
+   * Starts the committer thread.
+   * @param database     The store to write to.
+   * @param windowMillis How long a group stays open for more writes after its first write,
+   *                     in milliseconds.
+   * @param maxBatchSize The most writes committed per transaction.
+   */
+  public GroupCommitStore(GameStore database, long windowMillis, int maxBatchSize) {
+    this.database = database;
+    this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    this.maxBatchSize = maxBatchSize;
+    committer = new Thread(this::run, "group-commit");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  @Override
+  public void set(String gameId, GameBoard gameboard) throws SQLException {
+    commit(() -> database.set(gameId, gameboard));
+  }
+
+  @Override
+  public void recordMoves(String gameId, GameBoard gameboard, int fromSeq) throws SQLException {
+    commit(() -> database.recordMoves(gameId, gameboard, fromSeq));
+  }
+
+  @Override
+  public void unset(String gameId) throws SQLException {
+    commit(() -> database.unset(gameId));
+  }
+
+  @Override
+  public void archive(String gameId) throws SQLException {
+    commit(() -> database.archive(gameId));
+  }
+
+  @Override
+  public GameBoard get(String gameId) throws SQLException {
+    return database.get(gameId);
+  }
+
+  @Override
+  public void loadActive(BiConsumer<String, GameBoard> consumer) throws SQLException {
+    database.loadActive(consumer);
+  }
+
+  /**
+   * Runs the given work inside the transaction of its group.
+   * @param transaction The work to run.
+   * @throws SQLException An exception thrown by the work or by the commit.
+   */
+  @Override
+  public void inTransaction(Transaction transaction) throws SQLException {
+    commit(transaction);
+  }
+
+  /**
+   * Queues a write for the next group and waits for the group to commit.
+   * Writes made by the committer itself, from inside a group, run directly.
+   * @param work The write.
+   * @throws SQLException An exception thrown by the write or by the commit.
+   */
+  private void commit(Transaction work) throws SQLException {
+    if (Thread.currentThread() == committer) {
+      work.run();
+      return;
+    }
+    if (closed) {
+      throw new SQLException("Group commit is closed");
+    }
+    final PendingCommit pending = new PendingCommit(work);
+    queue.add(pending);
+    if (closed && queue.remove(pending)) {
+      // Closed before the committer could take the write
+      throw new SQLException("Group commit is closed");
+    }
+    try {
+      pending.committed.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for the commit", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof SQLException) {
+        throw (SQLException) e.getCause();
+      }
+      throw new SQLException(e.getCause());
+    }
+  }
+
+  /**
+   * Commits groups of queued writes until the store is closed and the queue is empty.
+   */
+  private void run() {
+    final List<PendingCommit> batch = new ArrayList<>();
+    while (!closed || !queue.isEmpty()) {
+      try {
+        // Wait for the first write of a group, then keep the group open for the window
+        final PendingCommit first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        final long deadline = System.nanoTime() + windowNanos;
+        while (batch.size() < maxBatchSize) {
+          final long remaining = deadline - System.nanoTime();
+          final PendingCommit next = remaining > 0
+              ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        // The committer is only stopped through closed, so commit the group gathered so far
+      }
+      if (!batch.isEmpty()) {
+        commitBatch(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Commits a group of writes in one transaction. If the transaction fails, each write is
+   * retried in a transaction of its own, so one failing write does not fail the others.
+   * @param batch The writes.
+   */
+  private void commitBatch(List<PendingCommit> batch) {
+    try {
+      database.inTransaction(() -> {
+        for (PendingCommit pending : batch) {
+          pending.work.run();
+        }
+      });
+      commitCount.incrementAndGet();
+      writeCount.addAndGet(batch.size());
+      for (PendingCommit pending : batch) {
+        pending.committed.complete(null);
+      }
+    } catch (SQLException e) {
+      for (PendingCommit pending : batch) {
+        try {
+          database.inTransaction(pending.work);
+          commitCount.incrementAndGet();
+          writeCount.incrementAndGet();
+          pending.committed.complete(null);
+        } catch (SQLException | RuntimeException retryException) {
+          pending.committed.completeExceptionally(retryException);
+        }
+      }
+    } catch (RuntimeException e) {
+      for (PendingCommit pending : batch) {
+        pending.committed.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of transactions committed.
+   * @return The number of commits.
+   */
+  public long getCommitCount() {
+    return commitCount.get();
+  }
+
+  /**
+   * Gets the average number of writes per committed transaction.
+   * @return The average group size, or 0 before the first commit.
+   */
+  public double getWritesPerCommit() {
+    final long commits = commitCount.get();
+    return commits == 0 ? 0 : (double) writeCount.get() / commits;
+  }
+
+  /**
+   * Commits every queued write, then stops the committer thread.
+   * The store written to is left open.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    try {
+      committer.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    // Fail any write the committer did not get to
+    final List<PendingCommit> abandoned = new ArrayList<>();
+    queue.drainTo(abandoned);
+    for (PendingCommit pending : abandoned) {
+      pending.committed.completeExceptionally(new SQLException("Group commit is closed"));
+    }
+  }
+
+}
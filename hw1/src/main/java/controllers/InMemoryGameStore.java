@@ -0,0 +1,207 @@
+package controllers;
+
+import com.google.gson.annotations.SerializedName;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+
+/**
+ * A GameStore that keeps every game in memory, so nothing survives a restart.
+ * Writes are staged and applied together when their transaction commits.
+ */
+public class InMemoryGameStore implements GameStore {
+
+  /**
+   * The kinds of write to a single game. The names are those written to a JSON journal.
+   */
+  protected enum ChangeKind {
+    // Stores a snapshot of the game
+    @SerializedName("set") SET,
+    // Appends moves to the stored game
+    @SerializedName("moves") MOVES,
+    // Removes the stored game
+    @SerializedName("unset") UNSET
+  }
+
+  /**
+   * A write to a single game.
+   */
+  protected static class Change {
+
+    @SerializedName("op")
+    final ChangeKind kind;
+
+    final String gameId;
+
+    // The snapshot of a set
+    final GameRecord game;
+
+    // The last move already stored before the moves of a moves write
+    final int fromSeq;
+
+    // The moves of a moves write, as cells
+    final int[] cells;
+
+    Change(ChangeKind kind, String gameId, GameRecord game, int fromSeq, int[] cells) {
+      this.kind = kind;
+      this.gameId = gameId;
+      this.game = game;
+      this.fromSeq = fromSeq;
+      this.cells = cells;
+    }
+
+    /**
+     * Applies the write to the stored games.
+     * @param games The stored games, keyed by game ID.
+     */
+    void applyTo(Map<String, GameRecord> games) {
+      switch (kind) {
+        case SET:
+          games.put(gameId, game);
+          break;
+        case MOVES:
+          games.computeIfPresent(gameId, (id, record) -> record.withMoves(fromSeq, cells));
+          break;
+        case UNSET:
+          games.remove(gameId);
+          break;
+        default:
+          break;
+      }
+    }
+
+  }
+
+  private final ConcurrentMap<String, GameRecord> games = new ConcurrentHashMap<>();
+
+  // Held by the single writer, across a whole transaction
+  private final ReentrantLock writeLock = new ReentrantLock();
+
+  // Writes of the open transaction, or null outside of one
+  private List<Change> staged;
+
+  @Override
+  public void set(String gameId, GameBoard gameboard) throws SQLException {
+    final Change change = new Change(ChangeKind.SET, gameId, GameRecord.of(gameboard), 0, null);
+    inTransaction(() -> staged.add(change));
+  }
+
+  @Override
+  public void recordMoves(String gameId, GameBoard gameboard, int fromSeq) throws SQLException {
+    final int toSeq = gameboard.getMoveCount();
+    final List<Change> changes = new ArrayList<>();
+    changes.add(new Change(ChangeKind.MOVES, gameId, null, fromSeq,
+        GameRecord.movesOf(gameboard, fromSeq)));
+
+    // Snapshot like the database does, so replays stay short
+    if (gameboard.isGameOver()
+        || toSeq / Database.SNAPSHOT_INTERVAL != fromSeq / Database.SNAPSHOT_INTERVAL) {
+      changes.add(new Change(ChangeKind.SET, gameId, GameRecord.of(gameboard), 0, null));
+    }
+    inTransaction(() -> staged.addAll(changes));
+  }
+
+  @Override
+  public GameBoard get(String gameId) throws SQLException {
+    final GameRecord record = games.get(gameId);
+    return record != null ? record.restore() : null;
+  }
+
+  @Override
+  public void unset(String gameId) throws SQLException {
+    final Change change = new Change(ChangeKind.UNSET, gameId, null, 0, null);
+    inTransaction(() -> staged.add(change));
+  }
+
+  @Override
+  public void loadActive(BiConsumer<String, GameBoard> consumer) throws SQLException {
+    // Sort by game ID like the database does
+    for (Map.Entry<String, GameRecord> entry : new TreeMap<>(games).entrySet()) {
+      if (entry.getValue().isActive()) {
+        consumer.accept(entry.getKey(), entry.getValue().restore());
+      }
+    }
+  }
+
+  @Override
+  public void inTransaction(Transaction transaction) throws SQLException {
+    final long token;
+    writeLock.lock();
+    try {
+      if (staged != null) {
+        // Already inside a transaction, which commits the work
+        transaction.run();
+        return;
+      }
+      staged = new ArrayList<>();
+      try {
+        transaction.run();
+        token = commit(staged);
+      } finally {
+        staged = null;
+      }
+    } finally {
+      writeLock.unlock();
+    }
+    awaitDurable(token);
+  }
+
+  /**
+   * Commits the writes of a transaction. Called with the write lock held.
+   * @param changes The writes, in order.
+   * @return A token passed to awaitDurable once the write lock is released.
+   * @throws SQLException An exception thrown when the writes cannot be committed.
+   */
+  protected long commit(List<Change> changes) throws SQLException {
+    for (Change change : changes) {
+      apply(change);
+    }
+    return 0;
+  }
+
+  /**
+   * Waits until a committed transaction is durable. Called without the write lock,
+   * so stores can share one sync between transactions committed meanwhile.
+   * @param token The token returned by commit.
+   * @throws SQLException An exception thrown when the transaction cannot be made durable.
+   */
+  protected void awaitDurable(long token) throws SQLException {
+  }
+
+  /**
+   * Applies a committed write to the stored games.
+   * @param change The write.
+   */
+  protected void apply(Change change) {
+    change.applyTo(games);
+  }
+
+  /**
+   * Runs the action on every stored game.
+   * @param action The action, given each game ID and its record.
+   */
+  protected void forEachRecord(BiConsumer<String, GameRecord> action) {
+    games.forEach(action);
+  }
+
+  /**
+   * Gets the number of stored games.
+   * @return The number of games.
+   */
+  public int size() {
+    return games.size();
+  }
+
+  @Override
+  public void close() throws SQLException {
+    games.clear();
+  }
+
+}
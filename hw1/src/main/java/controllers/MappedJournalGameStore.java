@@ -0,0 +1,448 @@
+package controllers;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * A GameStore that keeps every game in memory and appends each committed write as a binary
+ * record to memory-mapped segment files. Transactions committed while another is syncing share
+ * its next sync, so durability costs one sync per batch of transactions.
+ * Segments roll over when full, and once enough have filled up the journal is compacted into a
+ * single snapshot of every active game, dropping finished games and their move records.
+ */
+public class MappedJournalGameStore extends InMemoryGameStore {
+
+  /**
+   * A segment file mapped into memory.
+   */
+  private static class Segment {
+
+    private final long index;
+    private final Path path;
+    private final MappedByteBuffer buffer;
+
+    private Segment(long index, Path path, MappedByteBuffer buffer) {
+      this.index = index;
+      this.path = path;
+      this.buffer = buffer;
+    }
+
+  }
+
+  // Directory used by the "mapped" store
+  public static final String JOURNAL_DIRECTORY = "tictactoe-journal";
+
+  // Size of each segment file, in bytes
+  public static final int DEFAULT_SEGMENT_SIZE = 64 << 20;
+
+  // Number of segments filled since the last compaction that triggers the next one
+  private static final int COMPACTION_THRESHOLD = 4;
+
+  // Largest record, in bytes, which holds any board with a full move log
+  private static final int MAX_RECORD_SIZE = 1 << 16;
+
+  // Each record starts with the length of its body and a CRC-32C of its body
+  private static final int HEADER_SIZE = 8;
+
+  // Record types
+  private static final byte SET_RECORD = 1;
+  private static final byte MOVES_RECORD = 2;
+  private static final byte UNSET_RECORD = 3;
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Path directory;
+
+  private final int segmentSize;
+
+  // Segments that filled up since the last compaction, guarded by the write lock
+  private final List<Segment> filledSegments = new ArrayList<>();
+
+  // Segments left by the last compaction, guarded by the write lock
+  private int compactedSegments;
+
+  // Body of the record being appended, guarded by the write lock
+  private final ByteBuffer scratch = ByteBuffer.allocate(MAX_RECORD_SIZE);
+
+  private final CRC32C crc = new CRC32C();
+
+  private volatile Segment current;
+
+  // Number of segment files, including the current one
+  private volatile int segmentCount;
+
+  // Bytes appended since the store was opened
+  private volatile long writtenBytes;
+
+  // Bytes appended and synced since the store was opened, guarded by syncLock
+  private long syncedBytes;
+
+  private long syncCount;
+
+  private final Object syncLock = new Object();
+
+  /**
+   * Opens the journal in the given directory, replaying every segment in it.
+   * Replay stops at the first record that is torn or fails its CRC, which is where appending
+   * resumes; any later segments are deleted.
+   * @param directory   The directory of the segment files.
+   * @param segmentSize The size of each new segment file, in bytes.
+   * @throws SQLException An exception thrown when the journal cannot be read or opened.
+   */
+  public MappedJournalGameStore(String directory, int segmentSize) throws SQLException {
+    this.directory = Paths.get(directory);
+    this.segmentSize = segmentSize;
+    try {
+      Files.createDirectories(this.directory);
+      final TreeMap<Long, Path> paths = listSegments();
+      boolean intact = true;
+      for (Map.Entry<Long, Path> entry : paths.entrySet()) {
+        if (!intact) {
+          Files.delete(entry.getValue());
+          continue;
+        }
+        final Segment segment = map(entry.getKey(), entry.getValue());
+        intact = replay(segment.buffer);
+        if (current != null) {
+          filledSegments.add(current);
+        }
+        current = segment;
+      }
+      if (current == null) {
+        current = map(1, segmentPath(1));
+      }
+      segmentCount = filledSegments.size() + 1;
+    } catch (IOException e) {
+      throw new SQLException("Journal cannot be opened: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Lists the segment files in the journal directory.
+   * @return The segment files, keyed by segment index.
+   * @throws IOException An exception thrown when the directory cannot be read.
+   */
+  private TreeMap<Long, Path> listSegments() throws IOException {
+    final TreeMap<Long, Path> paths = new TreeMap<>();
+    try (DirectoryStream<Path> stream =
+        Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path path : stream) {
+        final String name = path.getFileName().toString();
+        try {
+          paths.put(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+              name.length() - SEGMENT_SUFFIX.length())), path);
+        } catch (NumberFormatException e) {
+          // Not a segment
+        }
+      }
+    }
+    return paths;
+  }
+
+  /**
+   * Gets the path of a segment file.
+   * @param index The segment index.
+   * @return The path.
+   */
+  private Path segmentPath(long index) {
+    return directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+  }
+
+  /**
+   * Maps a segment file, creating it if needed.
+   * @param index The segment index.
+   * @param path  The path of the segment file.
+   * @return The segment, positioned at its start.
+   * @throws IOException An exception thrown when the file cannot be mapped.
+   */
+  private Segment map(long index, Path path) throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      final long size = Math.max(channel.size(), segmentSize);
+      return new Segment(index, path, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+  }
+
+  /**
+   * Replays the records of a segment, leaving the buffer positioned after the last valid one.
+   * @param buffer The mapped segment.
+   * @return True if the segment ended cleanly, false if it ended with an invalid record.
+   */
+  private boolean replay(MappedByteBuffer buffer) {
+    while (buffer.remaining() >= HEADER_SIZE) {
+      final int start = buffer.position();
+      final int length = buffer.getInt();
+      final int checksum = buffer.getInt();
+      if (length == 0 && checksum == 0) {
+        // The rest of the segment was never written
+        buffer.position(start);
+        return true;
+      }
+      final Change change = length > 0 && length <= buffer.remaining()
+          ? decode(buffer, length, checksum) : null;
+      if (change == null) {
+        // Wipe the torn or corrupt tail so it is never read again
+        buffer.position(start);
+        while (buffer.hasRemaining()) {
+          buffer.put((byte) 0);
+        }
+        buffer.position(start);
+        return false;
+      }
+      apply(change);
+      buffer.position(start + HEADER_SIZE + length);
+    }
+    return true;
+  }
+
+  /**
+   * Decodes the body of a record.
+   * @param buffer   The buffer, positioned at the body.
+   * @param length   The length of the body.
+   * @param checksum The CRC-32C the body must have.
+   * @return The write, or null if the body is corrupt.
+   */
+  private Change decode(ByteBuffer buffer, int length, int checksum) {
+    final ByteBuffer body = buffer.slice();
+    body.limit(length);
+    crc.reset();
+    crc.update(body.duplicate());
+    if ((int) crc.getValue() != checksum) {
+      return null;
+    }
+    try {
+      final byte type = body.get();
+      final byte[] gameIdBytes = new byte[body.getShort()];
+      body.get(gameIdBytes);
+      final String gameId = new String(gameIdBytes, StandardCharsets.UTF_8);
+      switch (type) {
+        case SET_RECORD:
+          return new Change(ChangeKind.SET, gameId, GameRecord.readFrom(body), 0, null);
+        case MOVES_RECORD:
+          final int fromSeq = body.getInt();
+          final int[] cells = new int[body.getShort()];
+          for (int i = 0; i < cells.length; i++) {
+            cells[i] = body.getShort();
+          }
+          return new Change(ChangeKind.MOVES, gameId, null, fromSeq, cells);
+        case UNSET_RECORD:
+          return new Change(ChangeKind.UNSET, gameId, null, 0, null);
+        default:
+          return null;
+      }
+    } catch (BufferUnderflowException | NegativeArraySizeException | SQLException e) {
+      return null;
+    }
+  }
+
+  @Override
+  protected long commit(List<Change> changes) throws SQLException {
+    for (Change change : changes) {
+      append(change);
+    }
+    super.commit(changes);
+    if (filledSegments.size() >= compactedSegments + COMPACTION_THRESHOLD) {
+      compact();
+    }
+    return writtenBytes;
+  }
+
+  /**
+   * Appends a write to the current segment, rolling over to a new segment if it is full.
+   * @param change The write.
+   * @throws SQLException An exception thrown when the record is too large or cannot be written.
+   */
+  private void append(Change change) throws SQLException {
+    // Encode the body of the record
+    final byte[] gameIdBytes = change.gameId.getBytes(StandardCharsets.UTF_8);
+    final int length;
+    switch (change.kind) {
+      case SET:
+        length = 3 + gameIdBytes.length + change.game.encodedSize();
+        break;
+      case MOVES:
+        length = 3 + gameIdBytes.length + 6 + 2 * change.cells.length;
+        break;
+      default:
+        length = 3 + gameIdBytes.length;
+        break;
+    }
+    if (length > MAX_RECORD_SIZE || HEADER_SIZE + length > segmentSize) {
+      throw new SQLException("Journal record too large: " + length + " bytes");
+    }
+    scratch.clear();
+    switch (change.kind) {
+      case SET:
+        scratch.put(SET_RECORD).putShort((short) gameIdBytes.length).put(gameIdBytes);
+        change.game.writeTo(scratch);
+        break;
+      case MOVES:
+        scratch.put(MOVES_RECORD).putShort((short) gameIdBytes.length).put(gameIdBytes);
+        scratch.putInt(change.fromSeq).putShort((short) change.cells.length);
+        for (int cell : change.cells) {
+          scratch.putShort((short) cell);
+        }
+        break;
+      default:
+        scratch.put(UNSET_RECORD).putShort((short) gameIdBytes.length).put(gameIdBytes);
+        break;
+    }
+    scratch.flip();
+    crc.reset();
+    crc.update(scratch.duplicate());
+
+    // Copy it into the segment, header last so a record cut short reads as the end of the log
+    if (current.buffer.remaining() < HEADER_SIZE + length) {
+      rollOver();
+    }
+    final MappedByteBuffer buffer = current.buffer;
+    final int start = buffer.position();
+    buffer.position(start + HEADER_SIZE);
+    buffer.put(scratch);
+    buffer.putInt(start, length);
+    buffer.putInt(start + 4, (int) crc.getValue());
+    writtenBytes += HEADER_SIZE + length;
+  }
+
+  /**
+   * Syncs the current segment and starts appending to a new one.
+   * @throws SQLException An exception thrown when the new segment cannot be created.
+   */
+  private void rollOver() throws SQLException {
+    // Sync before switching, so a sync of the new segment covers every earlier record
+    current.buffer.force();
+    filledSegments.add(current);
+    final long index = current.index + 1;
+    try {
+      current = map(index, segmentPath(index));
+    } catch (IOException e) {
+      throw new SQLException("Journal segment cannot be created: " + e.getMessage(), e);
+    }
+    segmentCount = filledSegments.size() + 1;
+  }
+
+  /**
+   * Rewrites every active game as a single snapshot in new segments, then unmaps and deletes
+   * the old segments. Finished games are dropped from the store, and unset games are already
+   * gone. A crash part way through leaves both, which replay without losing any game.
+   * @throws SQLException An exception thrown when the snapshots cannot be written.
+   */
+  public void compact() throws SQLException {
+    inTransaction(() -> {
+      final List<Segment> obsolete = new ArrayList<>(filledSegments);
+      rollOver();
+      obsolete.add(filledSegments.get(filledSegments.size() - 1));
+      filledSegments.clear();
+
+      final List<Change> snapshots = new ArrayList<>();
+      final List<Change> finished = new ArrayList<>();
+      forEachRecord((gameId, record) -> {
+        if (record.isActive()) {
+          snapshots.add(new Change(ChangeKind.SET, gameId, record, 0, null));
+        } else {
+          finished.add(new Change(ChangeKind.UNSET, gameId, null, 0, null));
+        }
+      });
+      for (Change snapshot : snapshots) {
+        append(snapshot);
+      }
+      current.buffer.force();
+      for (Change change : finished) {
+        apply(change);
+      }
+      compactedSegments = filledSegments.size();
+      segmentCount = filledSegments.size() + 1;
+
+      // A sync in flight may still hold an old segment, so unmap under the sync lock
+      synchronized (syncLock) {
+        for (Segment segment : obsolete) {
+          unmap(segment.buffer);
+          try {
+            Files.deleteIfExists(segment.path);
+          } catch (IOException e) {
+            throw new SQLException("Journal segment cannot be deleted: " + e.getMessage(), e);
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Releases the mapping of a segment that is no longer used, so its file's space is freed
+   * when it is deleted rather than when the buffer is collected. The buffer must not be used
+   * again. If the JDK does not allow it, the mapping is left to the garbage collector.
+   * @param buffer The mapped segment.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      unsafeClass.getMethod("invokeCleaner", ByteBuffer.class)
+          .invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Unmapped once the buffer is collected
+    }
+  }
+
+  /**
+   * Syncs the journal unless a sync that started after the transaction committed has already
+   * covered it. Threads waiting here are served by whichever of them syncs next.
+   * @param written The bytes appended up to the end of the transaction.
+   */
+  @Override
+  protected void awaitDurable(long written) {
+    synchronized (syncLock) {
+      if (syncedBytes >= written) {
+        return;
+      }
+      // Read the count before the segment, since a rollover syncs the segment it leaves
+      final long target = writtenBytes;
+      current.buffer.force();
+      syncedBytes = target;
+      syncCount++;
+    }
+  }
+
+  /**
+   * Gets the number of syncs, each of which made one or more transactions durable.
+   * @return The number of syncs.
+   */
+  public long getSyncCount() {
+    synchronized (syncLock) {
+      return syncCount;
+    }
+  }
+
+  /**
+   * Gets the number of segment files in the journal.
+   * @return The number of segments.
+   */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  @Override
+  public void close() throws SQLException {
+    inTransaction(() -> current.buffer.force());
+    super.close();
+  }
+
+}
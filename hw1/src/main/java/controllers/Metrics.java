@@ -0,0 +1,58 @@
+package controllers;
+
+import com.google.gson.Gson;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * A registry of named gauges that are read whenever the metrics are requested.
+ */
+public class Metrics {
+
+  private static final Gson GSON = new Gson();
+
+  private static final ConcurrentMap<String, Supplier<Number>> GAUGES = new ConcurrentHashMap<>();
+
+  private Metrics() {
+  }
+
+  /**
+   * Registers a gauge, replacing any gauge with the same name.
+   * @param name  The name of the gauge.
+   * @param gauge The supplier of the gauge's current value.
+   */
+  public static void register(String name, Supplier<Number> gauge) {
+    GAUGES.put(name, gauge);
+  }
+
+  /**
+   * Reads every gauge.
+   * @return The current value of each gauge, sorted by name.
+   */
+  public static Map<String, Number> snapshot() {
+    final Map<String, Number> values = new TreeMap<>();
+    GAUGES.forEach((name, gauge) -> values.put(name, gauge.get()));
+    return values;
+  }
+
+  /**
+   * Convert any object into a JSON string with the shared serializer.
+   * @param value The object.
+   * @return A JSON string.
+   */
+  public static String toJson(Object value) {
+    return GSON.toJson(value);
+  }
+
+  /**
+   * Convert the current values of every gauge into a JSON string.
+   * @return A JSON object string.
+   */
+  public static String toJson() {
+    return GSON.toJson(snapshot());
+  }
+
+}
@@ -1,14 +1,24 @@
 package controllers;
 
-import com.google.gson.Gson;
 import io.javalin.Javalin;
-import java.io.IOException;
-import java.util.Queue;
+import io.javalin.http.Context;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import models.Engine;
 import models.GameBoard;
+import models.MctsEngine;
 import models.Message;
 import models.Player;
-import org.eclipse.jetty.websocket.api.Session;
 
 public class PlayGame {
 
@@ -16,185 +26,779 @@ public class PlayGame {
 
   private static Javalin app;
   
-  private static GameBoard board;
+  // ID of the game served by the routes without a game ID
+  static final String DEFAULT_GAME_ID = GameStore.DEFAULT_GAME_ID;
+  
+  private static GameRegistry games;
   
   // Public for testing purposes
-  public static Database database;
+  public static GameStore database;
+  
+  // Background writer in front of the store in write-behind mode, or null
+  private static WriteBehindQueue writeBehind;
+  
+  // Store used unless another is chosen with --store=
+  private static final String DEFAULT_STORE = "sqlite";
+  
+  // Store name that keeps games only in memory, with nothing to restore or load them from
+  private static final String NO_STORE = "none";
+  
+  // Time between write-behind flushes
+  private static final long WRITE_BEHIND_INTERVAL_MS = 100;
+  
+  // Number of queued games that triggers an early write-behind flush
+  private static final int WRITE_BEHIND_BATCH_SIZE = 256;
+  
+  // Committer of concurrent writes in shared transactions in group-commit mode, or null
+  private static GroupCommitStore groupCommit;
+  
+  // Time a group commit waits for more writes after its first
+  private static final long GROUP_COMMIT_WINDOW_MS = 2;
+  
+  // Most writes committed in one group
+  private static final int GROUP_COMMIT_BATCH_SIZE = 256;
+  
+  // Thread restoring the active games from the store after the server starts, or null
+  private static Thread restorer;
+  
+  // When main was called, in nanoseconds
+  private static long startNanos;
+  
+  // Time from startup until the first request was served, or -1 until then
+  private static final AtomicLong firstRequestMillis = new AtomicLong();
+  
+  // Time from startup until every active game was restored, or -1 until then
+  private static final AtomicLong restoreMillis = new AtomicLong();
+  
+  // Number of games restored so far
+  private static final AtomicLong restoredGames = new AtomicLong();
+  
+  // Time between two sweeps of finished and idle games out of memory
+  private static final long SWEEP_INTERVAL_MS = TimeUnit.MINUTES.toMillis(1);
+  
+  // Time after its last use that a game is swept out of memory
+  private static final long IDLE_TTL_MS = TimeUnit.MINUTES.toMillis(30);
+  
+  // Sweeper of finished and idle games, or null
+  private static ScheduledExecutorService sweeper;
+  
+  // Number of games swept out of memory
+  private static final AtomicLong sweptGames = new AtomicLong();
+  
+  // Threads sending delayed broadcasts, shared by every game
+  private static final int BROADCAST_THREADS = 2;
+  
+  // Scheduler of delayed broadcasts and of the checks for stalled sessions
+  private static ScheduledThreadPoolExecutor broadcaster;
+  
+  // Time between two checks for sessions whose send is past its deadline
+  private static final long STALL_CHECK_INTERVAL_MS = TimeUnit.SECONDS.toMillis(1);
+  
+  // Delayed broadcast waiting to be sent for each game
+  private static final ConcurrentMap<String, DelayedBroadcast> pendingBroadcasts =
+      new ConcurrentHashMap<>();
+  
+  // Number of delayed broadcasts cancelled before they were sent
+  private static final AtomicLong cancelledBroadcasts = new AtomicLong();
+  
+  /**
+   * A broadcast of a game's board that is waiting for its delay to pass.
+   */
+  private static class DelayedBroadcast implements Runnable {
+  
+    private final String gameId;
+  
+    private final GameBoard board;
+  
+    private ScheduledFuture<?> future;
+  
+    private DelayedBroadcast(String gameId, GameBoard board) {
+      this.gameId = gameId;
+      this.board = board;
+    }
+  
+    @Override
+    public void run() {
+      pendingBroadcasts.remove(gameId, this);
+      final long version;
+      final byte[] gameBoardBytes;
+      synchronized (board) {
+        version = board.getVersion();
+        gameBoardBytes = board.toJsonBytes();
+      }
+      sendGameBoardToAllPlayers(gameId, board, version, gameBoardBytes);
+    }
+  
+  }
 
   /** Main method of the application.
-   * @param args Command line arguments
+   * @param args Command line arguments: --store=sqlite|sharded|memory|journal|mapped chooses
+   *             where games are stored, or --store=none keeps them only in memory,
+   *             --shards=N sets the number of sharded SQLite files,
+   *             --cache=N keeps at most N games in memory, --group-commit commits
+   *             concurrent moves together, and
+   *             --write-behind persists games in the background
    */
   public static void main(final String[] args) {
-    // Initialize the database, if possible
+    startNanos = System.nanoTime();
+    firstRequestMillis.set(-1);
+    restoreMillis.set(-1);
+    restoredGames.set(0);
+    
+    writeBehind = null;
+    groupCommit = null;
+    restorer = null;
+    sweeper = null;
+    pendingBroadcasts.clear();
+    broadcaster = new ScheduledThreadPoolExecutor(BROADCAST_THREADS, r -> {
+      Thread thread = new Thread(r, "broadcast");
+      thread.setDaemon(true);
+      return thread;
+    });
+    broadcaster.setRemoveOnCancelPolicy(true);
+    broadcaster.scheduleWithFixedDelay(UiWebSocket::evictStalledSessions,
+        STALL_CHECK_INTERVAL_MS, STALL_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    Metrics.register("broadcast.queueDepth", () -> broadcaster.getQueue().size());
+    Metrics.register("broadcast.cancelled", cancelledBroadcasts::get);
+    Metrics.register("broadcast.coalesced", SessionOutbox::getCoalescedCount);
+    Metrics.register("broadcast.sessionQueueDepth", UiWebSocket::getQueueDepth);
+    Metrics.register("broadcast.evictions", UiWebSocket::getEvictionCount);
+
+    // Initialize the store, if possible
     try {
-      database = new Database();
+      String storeName = DEFAULT_STORE;
+      int shardCount = ShardedGameStore.DEFAULT_SHARD_COUNT;
+      for (String arg : args) {
+        if (arg.startsWith("--store=")) {
+          storeName = arg.substring("--store=".length());
+        } else if (arg.startsWith("--shards=")) {
+          shardCount = Integer.parseInt(arg.substring("--shards=".length()));
+        }
+      }
+      if (NO_STORE.equals(storeName)) {
+        database = null;
+      } else {
+        database = "sharded".equals(storeName)
+            ? new ShardedGameStore(ShardedGameStore.SHARD_DIRECTORY, shardCount)
+            : GameStore.open(storeName);
+        if (database == null) {
+          throw new IllegalArgumentException("Invalid store: " + storeName);
+        }
+      }
       
-      // Restore the previous state
-      board = database.get();
+      if (database != null && Arrays.asList(args).contains("--group-commit")) {
+        groupCommit = new GroupCommitStore(database, GROUP_COMMIT_WINDOW_MS,
+            GROUP_COMMIT_BATCH_SIZE);
+        Metrics.register("persistence.groupCommits", groupCommit::getCommitCount);
+        Metrics.register("persistence.writesPerCommit", groupCommit::getWritesPerCommit);
+      }
+      if (database != null && Arrays.asList(args).contains("--write-behind")) {
+        writeBehind = new WriteBehindQueue(groupCommit != null ? groupCommit : database,
+            WRITE_BEHIND_INTERVAL_MS, WRITE_BEHIND_BATCH_SIZE);
+        Metrics.register("persistence.lagMillis", writeBehind::getLagMillis);
+        Metrics.register("persistence.pending", writeBehind::getPendingCount);
+      }
     } catch (Exception e) {
       database = null;
       e.printStackTrace();
     }
 
+    // Keep every game in memory unless a capacity is given, and always without a store, as
+    // an evicted game could not be loaded again
+    int cacheCapacity = 0;
+    for (String arg : args) {
+      if (arg.startsWith("--cache=")) {
+        cacheCapacity = Integer.parseInt(arg.substring("--cache=".length()));
+      }
+    }
+    if (cacheCapacity > 0 && database == null) {
+      System.err.println("Ignoring --cache=" + cacheCapacity + " as games are not stored");
+      cacheCapacity = 0;
+    }
+    games = new GameRegistry(cacheCapacity, PlayGame::writeBack);
+    Metrics.register("cache.size", games::size);
+    Metrics.register("cache.hits", games::getHitCount);
+    Metrics.register("cache.misses", games::getMissCount);
+    Metrics.register("cache.evictions", games::getEvictionCount);
+    Metrics.register("cache.writeBacks", games::getWriteBackCount);
+
     app = Javalin.create(config -> {
       config.addStaticFiles("/public");
     }).start(PORT_NUMBER);
     
-    // Create a new game
-    app.get("/newgame", ctx -> {
-      if (database != null) {
-        database.unset();
-        board = null;
-      }
-      ctx.redirect("/tictactoe.html");
-    });
+    // Restore the active games once the server is up; a request for a game that is not
+    // restored yet loads that game on its own
+    if (database != null) {
+      restorer = new Thread(PlayGame::restoreGames, "restore");
+      restorer.setDaemon(true);
+      restorer.start();
+      
+      // Archive finished games and drop idle ones, keeping only active games in memory
+      sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "archive-sweeper");
+        thread.setDaemon(true);
+        return thread;
+      });
+      sweeper.scheduleWithFixedDelay(() -> sweepGames(IDLE_TTL_MS), SWEEP_INTERVAL_MS,
+          SWEEP_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    Metrics.register("archive.sweptGames", sweptGames::get);
     
-    // Start a new game
-    app.post("/startgame", ctx -> {
-      if (ctx.formParam("type").isBlank() || (ctx.formParam("type").charAt(0) != 'X'
-          && ctx.formParam("type").charAt(0) != 'O')) {
-        ctx.status(500).result("Invalid type");
-        return;
-      }
+    // Report how long the first request took to be served after startup
+    app.after(ctx -> firstRequestMillis.compareAndSet(-1,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+    Metrics.register("startup.firstRequestMillis", firstRequestMillis::get);
+    Metrics.register("startup.restoreMillis", restoreMillis::get);
+    Metrics.register("startup.restoredGames", restoredGames::get);
     
-      // Extract the player type and construct the board.
-      final char type = ctx.formParam("type").charAt(0);
-      board = new GameBoard(type);
+    // Routes for the default game, kept for the single-game client
+    app.get("/newgame", ctx -> newGame(ctx, DEFAULT_GAME_ID));
+    app.post("/startgame", ctx -> startGame(ctx, DEFAULT_GAME_ID));
+    app.get("/joingame", ctx -> joinGame(ctx, DEFAULT_GAME_ID));
+    app.post("/move/:playerId", ctx -> move(ctx, DEFAULT_GAME_ID));
+    
+    // Routes for any game hosted by this node
+    app.get("/game/:gameId/newgame", ctx -> newGame(ctx, ctx.pathParam("gameId")));
+    app.post("/game/:gameId/startgame", ctx -> startGame(ctx, ctx.pathParam("gameId")));
+    app.get("/game/:gameId/joingame", ctx -> joinGame(ctx, ctx.pathParam("gameId")));
+    app.post("/game/:gameId/move/:playerId", ctx -> move(ctx, ctx.pathParam("gameId")));
 
-      if (database != null) {
-        // Update the board state in the database
-        database.set(board);
-      }
+    // Report the gauges of this node
+    Metrics.register("mcts.playoutsPerSecond", MctsEngine.DEFAULT::getPlayoutsPerSecond);
+    app.get("/metrics", ctx -> ctx.contentType("application/json").result(Metrics.toJson()));
+    app.get("/game/:gameId/metrics", ctx -> ctx.contentType("application/json")
+        .result(Metrics.toJson(UiWebSocket.getRoomMetrics(ctx.pathParam("gameId")))));
 
-      ctx.status(200).result(board.toJson());
-    });
+    // Web sockets - DO NOT DELETE or CHANGE
+    app.ws("/gameboard", new UiWebSocket());
+  }
+  
+  /**
+   * Creates a new game by discarding the given game.
+   * @param ctx    The request context.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game cannot be removed from the database.
+   */
+  private static void newGame(final Context ctx, final String gameId) throws SQLException {
+    cancelBroadcast(gameId);
+    games.remove(gameId);
+    final GameStore store = store();
+    if (store != null) {
+      store.unset(gameId);
+    }
+    ctx.redirect("/tictactoe.html");
+  }
+  
+  /**
+   * Starts a new game.
+   * @param ctx    The request context.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game cannot be saved to the database.
+   */
+  private static void startGame(final Context ctx, final String gameId) throws SQLException {
+    if (ctx.formParam("type").isBlank() || (ctx.formParam("type").charAt(0) != 'X'
+        && ctx.formParam("type").charAt(0) != 'O')) {
+      ctx.status(500).result("Invalid type");
+      return;
+    }
+  
+    // Extract the optional board size and win length, defaulting to 3x3 with 3 in a row
+    final int size = parseIntParam(ctx.formParam("size"), 3);
+    if (size < GameBoard.MIN_SIZE || size > GameBoard.MAX_SIZE) {
+      ctx.status(500).result("Invalid size");
+      return;
+    }
+    final int winLength = parseIntParam(ctx.formParam("winLength"), 3);
+    if (winLength < GameBoard.MIN_SIZE || winLength > size) {
+      ctx.status(500).result("Invalid win length");
+      return;
+    }
+  
+    // Extract the player type and construct the board.
+    final char type = ctx.formParam("type").charAt(0);
+    final GameBoard board = new GameBoard(type, size, winLength);
     
-    // Join an existing game
-    app.get("/joingame", ctx -> {
-      if (board == null) {
-        ctx.status(500).result("Board not initialized");
+    // Let a server-side engine join as player 2 in single-player mode
+    final String opponent = ctx.formParam("opponent");
+    if (opponent != null && !opponent.isBlank()) {
+      final Engine engine = Engine.forName(opponent);
+      if (engine == null) {
+        ctx.status(500).result("Invalid opponent");
         return;
       }
-
-      // Try to start the game
       try {
-        board.joinGame();
+        board.joinGame(engine);
       } catch (Exception e) {
-        ctx.status(400).result(e.getMessage());
+        ctx.status(500).result(e.getMessage());
+        return;
+      }
+    }
+    
+    final long version;
+    final byte[] gameBoardBytes;
+    cancelBroadcast(gameId);
+    
+    // Store the game before any request can see it, and register it without holding its lock,
+    // as registering may wait for the lock of a game it evicts
+    try {
+      persist(gameId, board);
+    } finally {
+      games.put(gameId, board);
+    }
+    synchronized (board) {
+      version = board.getVersion();
+      gameBoardBytes = board.toJsonBytes();
+    }
+    
+    ctx.status(200).result(gameBoardBytes);
+    if (board.getEngine() != null) {
+      sendGameBoardToAllPlayers(gameId, board, version, gameBoardBytes);
+    }
+  }
+  
+  /**
+   * Joins an existing game.
+   * @param ctx    The request context.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game cannot be saved to the database.
+   */
+  private static void joinGame(final Context ctx, final String gameId) throws SQLException {
+    GameBoard board;
+    while (true) {
+      board = findGame(gameId);
+      if (board == null) {
+        ctx.status(500).result("Board not initialized");
         return;
       }
 
-      if (database != null) {
-        // Update the board state in the database
-        database.set(board);
+      synchronized (board) {
+        // Look the game up again if it was evicted or replaced before its lock was taken
+        if (!games.contains(gameId, board)) {
+          continue;
+        }
+
+        // Try to start the game
+        try {
+          board.joinGame();
+        } catch (Exception e) {
+          ctx.status(400).result(e.getMessage());
+          return;
+        }
+
+        persist(gameId, board);
+        break;
       }
-      
-      ctx.status(302).redirect("/tictactoe.html?p=2");
-      // Send board after an async delay to allow p2 to redirect
-      sendGameBoardToAllPlayers(board.toJson(), 1);
-    });
+    }
     
-    // Perform a move by the given player
-    app.post("/move/:playerId", ctx -> {
+    ctx.status(302).redirect(DEFAULT_GAME_ID.equals(gameId)
+        ? "/tictactoe.html?p=2" : "/tictactoe.html?p=2&gameId=" + gameId);
+    // Send board after an async delay to allow p2 to redirect
+    sendGameBoardToAllPlayers(gameId, board, 1);
+  }
+  
+  /**
+   * Performs a move by the given player.
+   * @param ctx    The request context.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game cannot be saved to the database.
+   */
+  private static void move(final Context ctx, final String gameId) throws SQLException {
+    GameBoard board;
+    long version;
+    byte[] gameBoardBytes;
+    while (true) {
       // Ensure the game has already started
+      board = findGame(gameId);
       if (board == null) {
         ctx.status(400).result("Board not initialized");
         return;
       }
-      
-      if (!board.isGameStarted()) {
-        ctx.status(400).result("Game not started");
-        return;
-      }
-      
-      // Ensure the game is still going
-      if (board.isGameOver()) {
-        ctx.status(200).result(new Message(false, 101, "Game already over").toJson());
-        return;
-      }
-      
-      // Ensure a player ID is provided
-      if (ctx.pathParam("playerId").length() != 1) {
-        ctx.status(200).result(new Message(false, 102, "Invalid playerId").toJson());
-        return;
+
+      synchronized (board) {
+        // Look the game up again if it was evicted or replaced before its lock was taken
+        if (!games.contains(gameId, board)) {
+          continue;
+        }
+
+        if (!board.isGameStarted()) {
+          ctx.status(400).result("Game not started");
+          return;
+        }
+        
+        // Ensure the game is still going
+        if (board.isGameOver()) {
+          ctx.status(200).result(new Message(false, 101, "Game already over").toJson());
+          return;
+        }
+        
+        // Ensure a player ID is provided
+        if (ctx.pathParam("playerId").length() != 1) {
+          ctx.status(200).result(new Message(false, 102, "Invalid playerId").toJson());
+          return;
+        }
+        
+        // Ensure the player ID is valid
+        final int playerId = Integer.parseInt(ctx.pathParam("playerId"));
+        if (playerId != 1 && playerId != 2) {
+          ctx.status(200).result(new Message(false, 103, "Incorrect playerId").toJson());
+          return;
+        }
+        
+        // Ensure player 2 is not played by the engine
+        if (playerId == 2 && board.getEngine() != null) {
+          ctx.status(200).result(new Message(false, 103, "Player 2 is the engine").toJson());
+          return;
+        }
+        
+        // Ensure position is provided
+        if (ctx.formParam("x").isBlank() || ctx.formParam("y").isBlank()) {
+          ctx.status(200).result(new Message(false, 104, "Missing position").toJson());
+          return;
+        }
+        
+        // Extract the necessary information to play a turn
+        final Player player = playerId == 1 ? board.getP1() : board.getP2();
+        final int x = Integer.parseInt(ctx.formParam("x"));
+        final int y = Integer.parseInt(ctx.formParam("y"));
+        
+        // Try to play a turn and throw an exception if it cannot be played
+        final int fromSeq = board.getMoveCount();
+        try {
+          board.playMove(player, x, y);
+        } catch (Exception e) {
+          ctx.status(200).result(new Message(false, 105, e.getMessage()).toJson());
+          return;
+        }
+
+        persistMoves(gameId, board, fromSeq);
+        version = board.getVersion();
+        gameBoardBytes = board.toJsonBytes();
+        break;
       }
-      
-      // Ensure the player ID is valid
-      final int playerId = Integer.parseInt(ctx.pathParam("playerId"));
-      if (playerId != 1 && playerId != 2) {
-        ctx.status(200).result(new Message(false, 103, "Incorrect playerId").toJson());
+    }
+    
+    ctx.status(200).result(new Message(true, 100, "").toJson());
+    sendGameBoardToAllPlayers(gameId, board, version, gameBoardBytes);
+    requestEngineReply(gameId, board);
+  }
+
+  /**
+   * Asks the game's engine for its reply if it is the engine's turn. The engine chooses the
+   * move without the board's lock, so a slow search holds up neither this request nor others
+   * on the game, and the move is played once it is chosen.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard.
+   */
+  private static void requestEngineReply(final String gameId, final GameBoard board) {
+    final int seq;
+    final CompletableFuture<Integer> reply;
+    synchronized (board) {
+      if (!board.isEngineTurn()) {
         return;
       }
-      
-      // Ensure position is provided
-      if (ctx.formParam("x").isBlank() || ctx.formParam("y").isBlank()) {
-        ctx.status(200).result(new Message(false, 104, "Missing position").toJson());
+      seq = board.getMoveCount();
+      reply = board.getEngine().chooseMoveAsync(board);
+    }
+    reply.thenAccept(cell -> playEngineReply(gameId, board, seq, cell));
+  }
+
+  /**
+   * Plays the engine's reply on the given game, unless the game moved on while the engine
+   * searched. A board evicted meanwhile asks for a reply of its own once it is loaded again.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard the reply was chosen for.
+   * @param seq    The number of moves played when the reply was asked for.
+   * @param cell   The chosen cell as x * size + y.
+   */
+  private static void playEngineReply(final String gameId, final GameBoard board,
+      final int seq, final int cell) {
+    final long version;
+    final byte[] gameBoardBytes;
+    synchronized (board) {
+      if (!games.contains(gameId, board) || board.getMoveCount() != seq
+          || !board.isEngineTurn()) {
         return;
       }
-      
-      // Extract the necessary information to play a turn
-      final Player player = playerId == 1 ? board.getP1() : board.getP2();
-      final int x = Integer.parseInt(ctx.formParam("x"));
-      final int y = Integer.parseInt(ctx.formParam("y"));
-      
-      // Try to play a turn and throw an exception if it cannot be played
       try {
-        board.playTurn(player, x, y);
+        board.playMove(board.getP2(), cell / board.getSize(), cell % board.getSize());
+        persistMoves(gameId, board, seq);
       } catch (Exception e) {
-        ctx.status(200).result(new Message(false, 105, e.getMessage()).toJson());
+        e.printStackTrace();
         return;
       }
-
-      if (database != null) {
-        // Update the board state in the database
-        database.set(board);
-      }
-      
-      ctx.status(200).result(new Message(true, 100, "").toJson());
-      sendGameBoardToAllPlayers(board.toJson());
-    });
-
-    // Web sockets - DO NOT DELETE or CHANGE
-    app.ws("/gameboard", new UiWebSocket());
+      version = board.getVersion();
+      gameBoardBytes = board.toJsonBytes();
+    }
+    sendGameBoardToAllPlayers(gameId, board, version, gameBoardBytes);
   }
   
   /**
-   * Asynchronously calls sendGameBoardToAllPlayers after a delay.
-   * Catches the IO exception and prints to stack trace.
-   * @param gameBoardJson Gameboard JSON
-   * @param secDelay The number of seconds to wait before the call.
+   * Parses an optional integer form parameter.
+   * @param value        The raw parameter value, or null if it is missing.
+   * @param defaultValue The value to use if the parameter is missing or blank.
+   * @return The parsed value, or -1 if the value is not an integer.
    */
-  private static void sendGameBoardToAllPlayers(final String gameBoardJson, final int secDelay) {
-    Thread thread = new Thread(new Runnable() {
-      public void run() {
+  private static int parseIntParam(final String value, final int defaultValue) {
+    if (value == null || value.isBlank()) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+  
+  /**
+   * Gets the given game from the registry, loading it from the database if it is not registered.
+   * @param gameId The ID of the game.
+   * @return The gameboard or null.
+   * @throws SQLException An exception thrown when the game cannot be read from the database.
+   */
+  private static GameBoard findGame(final String gameId) throws SQLException {
+    final GameBoard board = games.get(gameId);
+    final GameStore store = store();
+    if (board != null || store == null) {
+      return board;
+    }
+    final GameBoard stored = store.get(gameId);
+    if (stored == null) {
+      return null;
+    }
+    final GameBoard registered = games.putIfAbsent(gameId, stored);
+    if (registered == stored) {
+      // The engine's reply may have been lost with the board that was stored
+      requestEngineReply(gameId, stored);
+    }
+    return registered;
+  }
+  
+  /**
+   * Restores every game that is still being played from the store. Games a request has
+   * registered in the meantime are kept, since they are at least as recent as the stored ones.
+   * Finished games are not restored, and load on demand.
+   */
+  private static void restoreGames() {
+    try {
+      store().loadActive((gameId, board) -> {
+        if (games.putIfAbsent(gameId, board) == board) {
+          requestEngineReply(gameId, board);
+        }
+        restoredGames.incrementAndGet();
+      });
+      restoreMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    } catch (SQLException e) {
+      e.printStackTrace();
+    }
+  }
+  
+  /**
+   * Sweeps finished games and games idle past the given time out of memory. Finished games are
+   * moved into the store's archive; idle games are already stored. Both load again on demand.
+   * Games are only swept when they are persisted, as they would be lost otherwise.
+   * @param idleTtlMillis The time after its last use that a game is swept, in milliseconds.
+   * @return The number of games swept.
+   */
+  public static int sweepGames(final long idleTtlMillis) {
+    final GameStore store = store();
+    if (store == null) {
+      return 0;
+    }
+    final AtomicLong swept = new AtomicLong();
+    games.forEach((gameId, board) -> {
+      final boolean finished;
+      synchronized (board) {
+        if (!board.isGameOver() && games.getIdleMillis(gameId) < idleTtlMillis) {
+          return;
+        }
         try {
-          TimeUnit.SECONDS.sleep(secDelay);
-          sendGameBoardToAllPlayers(new Gson().toJson(board));
-        } catch (InterruptedException e) {
+          // Store any change whose write failed before letting go of the game
+          if (games.isDirty(gameId)) {
+            persist(gameId, board);
+          }
+        } catch (SQLException e) {
+          e.printStackTrace();
+          return;
+        }
+        if (!games.remove(gameId, board)) {
+          return;
+        }
+        finished = board.isGameOver();
+      }
+      swept.incrementAndGet();
+      
+      // Archive without the board's lock, as archiving may flush writes that take it
+      if (finished) {
+        try {
+          store.archive(gameId);
+        } catch (SQLException e) {
           e.printStackTrace();
         }
       }
     });
-    thread.start();
+    sweptGames.addAndGet(swept.get());
+    return (int) swept.get();
   }
-
+  
+  /**
+   * Saves the given game to the database, if it is backed by one.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard to save.
+   * @throws SQLException An exception thrown when the game cannot be saved to the database.
+   */
+  private static void persist(final String gameId, final GameBoard board) throws SQLException {
+    final GameStore store = store();
+    if (store != null) {
+      // Update the board state in the store, or queue it in write-behind mode
+      try {
+        store.set(gameId, board);
+      } catch (SQLException e) {
+        games.setDirty(gameId, true);
+        throw e;
+      }
+      games.setDirty(gameId, false);
+    }
+  }
+  
   /**
-   * Send message to all players.
-   * @param gameBoardJson Gameboard JSON
-   * @throws IOException Websocket message send IO Exception
+   * Appends the moves just played on the given game to the database's move log,
+   * if it is backed by one.
+   * @param gameId  The ID of the game.
+   * @param board   The gameboard the moves were played on.
+   * @param fromSeq The sequence number of the last move before this request.
+   * @throws SQLException An exception thrown when the moves cannot be saved to the database.
    */
-  private static void sendGameBoardToAllPlayers(final String gameBoardJson) {
-    Queue<Session> sessions = UiWebSocket.getSessions();
-    for (Session sessionPlayer : sessions) {
+  private static void persistMoves(final String gameId, final GameBoard board, final int fromSeq)
+      throws SQLException {
+    final GameStore store = store();
+    if (store != null && games.isDirty(gameId)) {
+      // Earlier changes were not stored either, so store the whole board
+      persist(gameId, board);
+    } else if (store != null) {
+      // Append the moves to the store, or queue them in write-behind mode
       try {
-        sessionPlayer.getRemote().sendString(gameBoardJson);
-      } catch (IOException e) {
+        store.recordMoves(gameId, board, fromSeq);
+      } catch (SQLException e) {
+        games.setDirty(gameId, true);
+        throw e;
+      }
+    }
+  }
+  
+  /**
+   * Writes back a dirty game evicted from a bounded registry.
+   * @param gameId The ID of the game.
+   * @param board  The evicted gameboard.
+   */
+  private static void writeBack(final String gameId, final GameBoard board) {
+    final GameStore store = store();
+    if (store == null) {
+      return;
+    }
+    synchronized (board) {
+      try {
+        store.set(gameId, board);
+      } catch (SQLException e) {
         e.printStackTrace();
       }
     }
   }
+  
+  /**
+   * Gets the store games are written to, which is the write-behind queue in write-behind mode
+   * and the group committer in group-commit mode.
+   * @return The store, or null if games are not persisted.
+   */
+  private static GameStore store() {
+    if (database == null) {
+      return null;
+    } else if (writeBehind != null) {
+      return writeBehind;
+    }
+    return groupCommit != null ? groupCommit : database;
+  }
+  
+  /**
+   * Schedules sendGameBoardToAllPlayers after a delay, on the shared broadcast scheduler.
+   * The board is serialized when it is sent, and replaces any broadcast still waiting for
+   * the same game.
+   * @param gameId ID of the game whose players receive the board
+   * @param board Gameboard to send
+   * @param secDelay The number of seconds to wait before the call.
+   */
+  private static void sendGameBoardToAllPlayers(final String gameId, final GameBoard board,
+      final int secDelay) {
+    pendingBroadcasts.compute(gameId, (id, previous) -> {
+      if (previous != null && previous.future.cancel(false)) {
+        cancelledBroadcasts.incrementAndGet();
+      }
+      final DelayedBroadcast broadcast = new DelayedBroadcast(gameId, board);
+      try {
+        broadcast.future = broadcaster.schedule(broadcast, secDelay, TimeUnit.SECONDS);
+      } catch (RejectedExecutionException e) {
+        // The server is stopping
+        return null;
+      }
+      return broadcast;
+    });
+  }
+  
+  /**
+   * Cancels the delayed broadcast waiting for the given game, as its board is being replaced.
+   * @param gameId ID of the game
+   */
+  private static void cancelBroadcast(final String gameId) {
+    final DelayedBroadcast broadcast = pendingBroadcasts.remove(gameId);
+    if (broadcast != null && broadcast.future.cancel(false)) {
+      cancelledBroadcasts.incrementAndGet();
+    }
+  }
+
+  /**
+   * Send message to all players of a game, without waiting for slow players. A player still
+   * receiving an earlier board is sent only the newest board once that send finishes.
+   * @param gameId ID of the game whose players receive the board
+   * @param board Gameboard the JSON was encoded from
+   * @param version Version of the gameboard
+   * @param gameBoardBytes Gameboard JSON, encoded as UTF-8
+   */
+  private static void sendGameBoardToAllPlayers(final String gameId, final GameBoard board,
+      final long version, final byte[] gameBoardBytes) {
+    UiWebSocket.broadcast(gameId, board, version, gameBoardBytes);
+  }
 
   public static void stop() {
     app.stop();
+    broadcaster.shutdownNow();
+    pendingBroadcasts.clear();
+    if (sweeper != null) {
+      sweeper.shutdown();
+      try {
+        sweeper.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (restorer != null) {
+      // Let the restore finish before its store is closed
+      try {
+        restorer.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (writeBehind != null) {
+      writeBehind.close();
+    }
+    if (groupCommit != null) {
+      groupCommit.close();
+    }
+    if (database != null) {
+      try {
+        database.close();
+      } catch (SQLException e) {
+        e.printStackTrace();
+      }
+    }
   }
 }
@@ -0,0 +1,186 @@
+package controllers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+
+/**
+ * Sends gameboards to one web socket session without blocking the caller. At most one send is
+ * in flight per session; boards offered meanwhile replace each other, and only the newest is
+ * sent once the send in flight finishes. A slow client thus receives fewer boards instead of
+ * holding up the server. A client that falls too far behind, or whose send takes too long, is
+ * evicted by its owner. Boards are offered as UTF-8 JSON, which is sent to every session as
+ * it is instead of being encoded again for each one.
+ */
+public class SessionOutbox implements WriteCallback {
+
+  // Most boards offered behind the send in flight before the session counts as too slow
+  public static final int MAX_QUEUED = 32;
+
+  // Longest a send may take before the session counts as stalled
+  public static final long SEND_DEADLINE_MS = TimeUnit.SECONDS.toMillis(10);
+
+  // Number of boards replaced by a newer board before they were sent, across all sessions
+  private static final AtomicLong coalesced = new AtomicLong();
+
+  private final Session session;
+
+  // Gameboard of the newest board offered, as versions only order the states of one board
+  private Object offeredBoard;
+
+  // Version of the newest board offered
+  private long offeredVersion = -1;
+
+  // Newest board waiting for the send in flight, or null
+  private byte[] pending;
+
+  private boolean sending;
+
+  // When the send in flight started, in nanoseconds
+  private long sendStartedNanos;
+
+  // Number of boards offered since the send in flight started
+  private int queued;
+
+  private boolean closed;
+
+  /**
+   * Creates the outbox of a session.
+   * @param session The web socket session.
+   */
+  public SessionOutbox(Session session) {
+    this.session = session;
+  }
+
+  /**
+   * Offers a board to the session. The board is sent now if no send is in flight, or else
+   * after it, unless a newer board is offered first. Older versions of the gameboard last
+   * offered are dropped, while a board from another gameboard, such as one that replaced it,
+   * is always taken.
+   * @param board   The gameboard the board was encoded from.
+   * @param version The version of the board.
+   * @param bytes   The board's JSON, encoded as UTF-8. It must not be changed afterwards.
+   * @return False if more than MAX_QUEUED boards were offered behind the send in flight, and
+   *     the session should be evicted.
+   */
+  public boolean offer(Object board, long version, byte[] bytes) {
+    synchronized (this) {
+      if (closed || (board == offeredBoard && version <= offeredVersion)) {
+        return true;
+      }
+      offeredBoard = board;
+      offeredVersion = version;
+      if (sending) {
+        if (++queued > MAX_QUEUED) {
+          return false;
+        }
+        if (pending != null) {
+          coalesced.incrementAndGet();
+        }
+        pending = bytes;
+        return true;
+      }
+      sending = true;
+      sendStartedNanos = System.nanoTime();
+    }
+    send(bytes);
+    return true;
+  }
+
+  /**
+   * Checks if the send in flight has taken longer than SEND_DEADLINE_MS.
+   * @param nowNanos The current time, in nanoseconds.
+   * @return True if the session is stalled and should be evicted.
+   */
+  public synchronized boolean isOverdue(long nowNanos) {
+    return sending && !closed
+        && nowNanos - sendStartedNanos > TimeUnit.MILLISECONDS.toNanos(SEND_DEADLINE_MS);
+  }
+
+  /**
+   * Gets the number of boards offered since the send in flight started.
+   * @return The queue depth, or 0 if no send is in flight.
+   */
+  public synchronized int getQueueDepth() {
+    return sending ? queued : 0;
+  }
+
+  /**
+   * Drops any waiting board and disconnects the session without waiting for the client.
+   */
+  public void close() {
+    synchronized (this) {
+      closed = true;
+      pending = null;
+    }
+    try {
+      session.disconnect();
+    } catch (IOException e) {
+      // The connection is already gone
+    }
+  }
+
+  @Override
+  public void writeSuccess() {
+    sendNext();
+  }
+
+  @Override
+  public void writeFailed(Throwable cause) {
+    // The client misses this board, but still receives the next one
+    sendNext();
+  }
+
+  /**
+   * Sends the board waiting for the send that just finished, if any.
+   */
+  private void sendNext() {
+    final byte[] next;
+    synchronized (this) {
+      next = pending;
+      pending = null;
+      queued = 0;
+      if (next == null || closed) {
+        sending = false;
+        return;
+      }
+      sendStartedNanos = System.nanoTime();
+    }
+    send(next);
+  }
+
+  /**
+   * Sends a board as a text frame. Jetty's own endpoint is given the encoded board wrapped in a
+   * buffer of this session's own, while any other endpoint is sent it as a string.
+   * @param bytes The board's JSON, encoded as UTF-8.
+   */
+  private void send(byte[] bytes) {
+    try {
+      final RemoteEndpoint remote = session.getRemote();
+      if (remote instanceof WebSocketRemoteEndpoint) {
+        ((WebSocketRemoteEndpoint) remote).uncheckedSendFrame(
+            new TextFrame().setPayload(ByteBuffer.wrap(bytes)), this);
+      } else {
+        remote.sendString(new String(bytes, StandardCharsets.UTF_8), this);
+      }
+    } catch (RuntimeException e) {
+      writeFailed(e);
+    }
+  }
+
+  /**
+   * Gets the number of boards replaced by a newer board before they were sent.
+   * @return The number of coalesced boards.
+   */
+  public static long getCoalescedCount() {
+    return coalesced.get();
+  }
+
+}
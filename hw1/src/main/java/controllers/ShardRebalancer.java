@@ -0,0 +1,140 @@
+package controllers;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Moves games between shards to change the shard count of a ShardedGameStore. It runs offline,
+ * while no server has the shards open. Each game is copied to its new shard before it is
+ * removed from its old one, and the new count is recorded last, so an interrupted run can be
+ * repeated with the same arguments.
+ */
+public final class ShardRebalancer {
+
+  private ShardRebalancer() {
+  }
+
+  /** Main method of the rebalancer.
+   * @param args Command line arguments: --from=N and --to=M give the current and the new shard
+   *             count, and --directory=DIR the directory of the shards
+   * @throws SQLException An exception thrown when a shard cannot be read or written.
+   */
+  public static void main(final String[] args) throws SQLException {
+    String directory = ShardedGameStore.SHARD_DIRECTORY;
+    int from = 0;
+    int to = 0;
+    for (String arg : args) {
+      if (arg.startsWith("--directory=")) {
+        directory = arg.substring("--directory=".length());
+      } else if (arg.startsWith("--from=")) {
+        from = Integer.parseInt(arg.substring("--from=".length()));
+      } else if (arg.startsWith("--to=")) {
+        to = Integer.parseInt(arg.substring("--to=".length()));
+      }
+    }
+    final int moved = rebalance(directory, from, to);
+    System.out.println("Moved " + moved + " games from " + from + " to " + to + " shards");
+  }
+
+  /**
+   * Moves every game to its shard under the new shard count, then deletes the shards that are
+   * no longer used.
+   * @param directory The directory of the shards.
+   * @param from      The current shard count.
+   * @param to        The new shard count.
+   * @return The number of games moved.
+   * @throws SQLException An exception thrown when a shard cannot be read or written, or if the
+   *     directory does not hold the current shard count.
+   */
+  public static int rebalance(String directory, int from, int to) throws SQLException {
+    if (from < 1 || to < 1) {
+      throw new IllegalArgumentException("Invalid shard counts: " + from + " to " + to);
+    }
+    final int recorded = ShardedGameStore.readShardCount(directory);
+    if (recorded != 0 && recorded != from) {
+      throw new SQLException("Found " + recorded + " shards instead of " + from);
+    }
+
+    final Database[] shards = new Database[Math.max(from, to)];
+    int moved = 0;
+    try {
+      for (int i = 0; i < shards.length; i++) {
+        shards[i] = new Database(ShardedGameStore.shardFile(directory, i));
+      }
+      for (int i = 0; i < from; i++) {
+        moved += moveGames(shards, i, to);
+      }
+    } finally {
+      for (Database shard : shards) {
+        if (shard != null) {
+          shard.close();
+        }
+      }
+    }
+
+    // Delete the shards beyond the new count, which are empty by now
+    for (int i = to; i < shards.length; i++) {
+      final String file = ShardedGameStore.shardFile(directory, i);
+      try {
+        Files.deleteIfExists(Paths.get(file));
+        Files.deleteIfExists(Paths.get(file + "-wal"));
+        Files.deleteIfExists(Paths.get(file + "-shm"));
+      } catch (IOException e) {
+        throw new SQLException("Cannot delete shard " + i, e);
+      }
+    }
+    ShardedGameStore.writeShardCount(directory, to);
+    return moved;
+  }
+
+  /**
+   * Moves the games of one shard that belong elsewhere under the new shard count.
+   * @param shards The open shards.
+   * @param index  The index of the shard to move games from.
+   * @param to     The new shard count.
+   * @return The number of games moved.
+   * @throws SQLException An exception thrown when a shard cannot be read or written.
+   */
+  private static int moveGames(Database[] shards, int index, int to) throws SQLException {
+    // Find the games to move, grouped by their new shard
+    final List<List<String>> targets = new ArrayList<>();
+    for (int j = 0; j < to; j++) {
+      targets.add(new ArrayList<>());
+    }
+    final Database source = shards[index];
+    for (String gameId : source.gameIds()) {
+      final int target = ShardedGameStore.shardOf(gameId, to);
+      if (target != index) {
+        targets.get(target).add(gameId);
+      }
+    }
+
+    // Copy them in one transaction per target, then remove them from the source
+    int moved = 0;
+    for (int j = 0; j < to; j++) {
+      final List<String> gameIds = targets.get(j);
+      if (gameIds.isEmpty()) {
+        continue;
+      }
+      final Database target = shards[j];
+      target.inTransaction(() -> {
+        for (String gameId : gameIds) {
+          // Copy the rows as they are, so the move log and the archive come along
+          target.copyGame(source, gameId);
+        }
+      });
+      source.inTransaction(() -> {
+        for (String gameId : gameIds) {
+          source.unset(gameId);
+        }
+      });
+      moved += gameIds.size();
+    }
+    return moved;
+  }
+
+}
@@ -0,0 +1,258 @@
+package controllers;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+
+/**
+ * Spreads games across several SQLite files by a hash of their game ID, so writes to games on
+ * different shards run in parallel. Each shard has its own database and writer thread, which
+ * commits the writes queued for it in groups. The shard count is recorded next to the shards,
+ * and changing it requires moving the games offline with the ShardRebalancer.
+ */
+public class ShardedGameStore implements GameStore {
+
+  // Directory of the shards opened by default
+  public static final String SHARD_DIRECTORY = ".";
+
+  // Number of shards opened by default
+  public static final int DEFAULT_SHARD_COUNT = 4;
+
+  // File recording the number of shards in a directory
+  static final String SHARD_COUNT_NAME = "tictactoe.shards";
+
+  // Most writes a shard's writer commits in one transaction
+  private static final int WRITER_BATCH_SIZE = 256;
+
+  private final Database[] shards;
+
+  private final GroupCommitStore[] writers;
+
+  // Writes staged per shard by the transaction running on the current thread, if any
+  private final ThreadLocal<Map<Integer, List<Transaction>>> staged = new ThreadLocal<>();
+
+  /**
+   * Opens the shards in the given directory, creating any that do not exist.
+   * @param directory  The directory of the shard files.
+   * @param shardCount The number of shards.
+   * @throws SQLException An exception thrown when a shard cannot be opened, or if the directory
+   *     holds a different number of shards.
+   */
+  public ShardedGameStore(String directory, int shardCount) throws SQLException {
+    if (shardCount < 1) {
+      throw new IllegalArgumentException("Invalid shard count: " + shardCount);
+    }
+    final int recorded = readShardCount(directory);
+    if (recorded == 0) {
+      writeShardCount(directory, shardCount);
+    } else if (recorded != shardCount) {
+      throw new SQLException("Found " + recorded + " shards instead of " + shardCount
+          + "; run the ShardRebalancer to change the shard count");
+    }
+    shards = new Database[shardCount];
+    writers = new GroupCommitStore[shardCount];
+    for (int i = 0; i < shardCount; i++) {
+      shards[i] = new Database(shardFile(directory, i));
+      writers[i] = new GroupCommitStore(shards[i], 0, WRITER_BATCH_SIZE);
+    }
+  }
+
+  /**
+   * Gets the shard a game is stored on.
+   * @param gameId     The ID of the game.
+   * @param shardCount The number of shards.
+   * @return The index of the shard.
+   */
+  public static int shardOf(String gameId, int shardCount) {
+    return Math.floorMod(gameId.hashCode(), shardCount);
+  }
+
+  /**
+   * Gets the path of a shard file.
+   * @param directory The directory of the shard files.
+   * @param index     The index of the shard.
+   * @return The path of the shard file.
+   */
+  public static String shardFile(String directory, int index) {
+    return Paths.get(directory, "tictactoe-" + index + ".db").toString();
+  }
+
+  /**
+   * Reads the number of shards recorded in a directory.
+   * @param directory The directory of the shard files.
+   * @return The recorded number of shards, or 0 if none is recorded.
+   * @throws SQLException An exception thrown when the record cannot be read.
+   */
+  static int readShardCount(String directory) throws SQLException {
+    final Path path = Paths.get(directory, SHARD_COUNT_NAME);
+    if (!Files.exists(path)) {
+      return 0;
+    }
+    try {
+      return Integer.parseInt(new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim());
+    } catch (IOException | NumberFormatException e) {
+      throw new SQLException("Cannot read the shard count", e);
+    }
+  }
+
+  /**
+   * Records the number of shards in a directory.
+   * @param directory  The directory of the shard files.
+   * @param shardCount The number of shards.
+   * @throws SQLException An exception thrown when the record cannot be written.
+   */
+  static void writeShardCount(String directory, int shardCount) throws SQLException {
+    try {
+      Files.createDirectories(Paths.get(directory));
+      Files.write(Paths.get(directory, SHARD_COUNT_NAME),
+          String.valueOf(shardCount).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      throw new SQLException("Cannot write the shard count", e);
+    }
+  }
+
+  @Override
+  public void set(String gameId, GameBoard gameboard) throws SQLException {
+    final int shard = shardOf(gameId, shards.length);
+    final GameBoard written = stable(gameboard);
+    write(shard, () -> shards[shard].set(gameId, written));
+  }
+
+  @Override
+  public void recordMoves(String gameId, GameBoard gameboard, int fromSeq) throws SQLException {
+    final int shard = shardOf(gameId, shards.length);
+    final GameBoard written = stable(gameboard);
+    write(shard, () -> shards[shard].recordMoves(gameId, written, fromSeq));
+  }
+
+  /**
+   * Gets a gameboard that a write can read when it commits. Inside a transaction the write
+   * commits after the caller has let go of the gameboard, so it reads a copy taken now.
+   * @param gameboard The gameboard being written, held by the caller.
+   * @return The gameboard itself outside of a transaction, or a copy inside one.
+   */
+  private GameBoard stable(GameBoard gameboard) {
+    return staged.get() != null ? gameboard.copy() : gameboard;
+  }
+
+  @Override
+  public void unset(String gameId) throws SQLException {
+    final int shard = shardOf(gameId, shards.length);
+    write(shard, () -> shards[shard].unset(gameId));
+  }
+
+  @Override
+  public void archive(String gameId) throws SQLException {
+    final int shard = shardOf(gameId, shards.length);
+    write(shard, () -> shards[shard].archive(gameId));
+  }
+
+  @Override
+  public GameBoard get(String gameId) throws SQLException {
+    return shards[shardOf(gameId, shards.length)].get(gameId);
+  }
+
+  @Override
+  public void loadActive(BiConsumer<String, GameBoard> consumer) throws SQLException {
+    for (Database shard : shards) {
+      shard.loadActive(consumer);
+    }
+  }
+
+  /**
+   * Runs the given work, then commits its writes to each shard in one transaction per shard.
+   * Writes to a single shard are atomic; writes spread across shards are not. Each write
+   * commits the gameboard as it was when the work made the write.
+   * @param transaction The work to run.
+   * @throws SQLException An exception thrown by the work or by a commit.
+   */
+  @Override
+  public void inTransaction(Transaction transaction) throws SQLException {
+    if (staged.get() != null) {
+      // Already inside a transaction, which commits the work
+      transaction.run();
+      return;
+    }
+    final Map<Integer, List<Transaction>> writes = new TreeMap<>();
+    staged.set(writes);
+    try {
+      transaction.run();
+    } finally {
+      staged.remove();
+    }
+    for (Map.Entry<Integer, List<Transaction>> entry : writes.entrySet()) {
+      writers[entry.getKey()].inTransaction(() -> {
+        for (Transaction write : entry.getValue()) {
+          write.run();
+        }
+      });
+    }
+  }
+
+  /**
+   * Hands a write to its shard's writer, or stages it if a transaction is running.
+   * @param shard The index of the shard.
+   * @param write The write.
+   * @throws SQLException An exception thrown by the write or by its commit.
+   */
+  private void write(int shard, Transaction write) throws SQLException {
+    final Map<Integer, List<Transaction>> writes = staged.get();
+    if (writes != null) {
+      writes.computeIfAbsent(shard, i -> new ArrayList<>()).add(write);
+    } else {
+      writers[shard].inTransaction(write);
+    }
+  }
+
+  /**
+   * Gets the number of shards.
+   * @return The number of shards.
+   */
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  /**
+   * Gets the number of transactions committed by every shard's writer.
+   * @return The number of commits.
+   */
+  public long getCommitCount() {
+    long commits = 0;
+    for (GroupCommitStore writer : writers) {
+      commits += writer.getCommitCount();
+    }
+    return commits;
+  }
+
+  /**
+   * Stops every writer once its queued writes are committed, then closes the shards.
+   * @throws SQLException An exception thrown when closing a shard.
+   */
+  @Override
+  public void close() throws SQLException {
+    for (GroupCommitStore writer : writers) {
+      writer.close();
+    }
+    SQLException failure = null;
+    for (Database shard : shards) {
+      try {
+        shard.close();
+      } catch (SQLException e) {
+        failure = e;
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+}
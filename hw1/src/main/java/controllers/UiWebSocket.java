@@ -5,12 +5,19 @@ import io.javalin.websocket.WsCloseHandler;
 import io.javalin.websocket.WsConnectContext;
 import io.javalin.websocket.WsConnectHandler;
 import io.javalin.websocket.WsHandler;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 import org.eclipse.jetty.websocket.api.Session;
 
-/** Web socket class: DO NOT MODIFY.
+/** Web socket class. Sessions join the room of the game given by the
+ * gameId query parameter, or the default game if it is missing.
  * @author Shirish Singh
  *
  */
@@ -18,6 +25,21 @@ public class UiWebSocket implements Consumer<WsHandler>  {
 
   // Store sessions to broadcast a message to all users
   private static final Queue<Session> SESSIONS = new ConcurrentLinkedQueue<>();
+  
+  // Store sessions by game ID to broadcast a message to the players of one game
+  private static final ConcurrentMap<String, Set<Session>> ROOMS = new ConcurrentHashMap<>();
+  
+  // Store the game ID of each session to leave its room on close
+  private static final ConcurrentMap<Session, String> SESSION_ROOMS = new ConcurrentHashMap<>();
+  
+  // Store the outbox of each session to send it boards without blocking
+  private static final ConcurrentMap<Session, SessionOutbox> OUTBOXES = new ConcurrentHashMap<>();
+  
+  // Store the number of sessions evicted from each room that ever had a slow session
+  private static final ConcurrentMap<String, AtomicLong> ROOM_EVICTIONS = new ConcurrentHashMap<>();
+  
+  // Number of sessions evicted from every room
+  private static final AtomicLong EVICTIONS = new AtomicLong();
 
   @Override
   public void accept(final WsHandler t) {
@@ -27,8 +49,15 @@ public class UiWebSocket implements Consumer<WsHandler>  {
 
       @Override
       public void handleConnect(final WsConnectContext ctx) throws Exception {
-        // TODO Auto-generated method stub
+        final String gameId = ctx.queryParam("gameId", PlayGame.DEFAULT_GAME_ID);
         SESSIONS.add(ctx.session);
+        OUTBOXES.put(ctx.session, new SessionOutbox(ctx.session));
+        SESSION_ROOMS.put(ctx.session, gameId);
+        ROOMS.compute(gameId, (id, room) -> {
+          final Set<Session> joined = room != null ? room : ConcurrentHashMap.newKeySet();
+          joined.add(ctx.session);
+          return joined;
+        });
       }
 
     });
@@ -39,6 +68,15 @@ public class UiWebSocket implements Consumer<WsHandler>  {
       @Override
       public void handleClose(final WsCloseContext ctx) throws Exception {
         SESSIONS.remove(ctx.session);
+        OUTBOXES.remove(ctx.session);
+        final String gameId = SESSION_ROOMS.remove(ctx.session);
+        if (gameId != null) {
+          // Drop the room along with its last session
+          ROOMS.computeIfPresent(gameId, (id, room) -> {
+            room.remove(ctx.session);
+            return room.isEmpty() ? null : room;
+          });
+        }
       }
     });
   }
@@ -46,5 +84,109 @@ public class UiWebSocket implements Consumer<WsHandler>  {
   public static Queue<Session> getSessions() {
     return SESSIONS;
   }
+  
+  /**
+   * Gets the sessions subscribed to the given game.
+   * @param gameId The ID of the game.
+   * @return The sessions in the game's room.
+   */
+  public static Set<Session> getSessions(final String gameId) {
+    final Set<Session> room = ROOMS.get(gameId);
+    return room != null ? room : Collections.emptySet();
+  }
+  
+  /**
+   * Offers a board to every session in a game's room. Each session is sent the newest board
+   * once its previous send finishes, and older boards are skipped. Sessions too far behind
+   * are evicted.
+   * @param gameId  The ID of the game.
+   * @param board   The gameboard the board was encoded from.
+   * @param version The version of the board.
+   * @param bytes   The board's JSON, encoded as UTF-8 once for every session.
+   */
+  public static void broadcast(final String gameId, final Object board, final long version,
+      final byte[] bytes) {
+    for (Session session : getSessions(gameId)) {
+      final SessionOutbox outbox = OUTBOXES.get(session);
+      if (outbox != null && !outbox.offer(board, version, bytes)) {
+        evict(session, gameId);
+      }
+    }
+  }
+  
+  /**
+   * Evicts every session whose send has taken longer than the send deadline.
+   * @return The number of sessions evicted.
+   */
+  public static int evictStalledSessions() {
+    final long now = System.nanoTime();
+    int evicted = 0;
+    for (Map.Entry<Session, SessionOutbox> entry : OUTBOXES.entrySet()) {
+      if (entry.getValue().isOverdue(now)) {
+        final String gameId = SESSION_ROOMS.get(entry.getKey());
+        if (gameId != null && evict(entry.getKey(), gameId)) {
+          evicted++;
+        }
+      }
+    }
+    return evicted;
+  }
+  
+  /**
+   * Disconnects a slow session. It leaves its room once the disconnect closes it.
+   * @param session The session.
+   * @param gameId  The ID of the game whose room the session is in.
+   * @return True if the session was evicted, false if another thread evicted it first.
+   */
+  private static boolean evict(final Session session, final String gameId) {
+    final SessionOutbox outbox = OUTBOXES.remove(session);
+    if (outbox == null) {
+      return false;
+    }
+    EVICTIONS.incrementAndGet();
+    ROOM_EVICTIONS.computeIfAbsent(gameId, id -> new AtomicLong()).incrementAndGet();
+    outbox.close();
+    return true;
+  }
+  
+  /**
+   * Gets the broadcast metrics of a game's room.
+   * @param gameId The ID of the game.
+   * @return The number of sessions in the room, the total queue depth of their outboxes, and
+   *     the number of sessions evicted from the room.
+   */
+  public static Map<String, Number> getRoomMetrics(final String gameId) {
+    int queueDepth = 0;
+    final Set<Session> room = getSessions(gameId);
+    for (Session session : room) {
+      final SessionOutbox outbox = OUTBOXES.get(session);
+      if (outbox != null) {
+        queueDepth += outbox.getQueueDepth();
+      }
+    }
+    final AtomicLong evictions = ROOM_EVICTIONS.get(gameId);
+    return Map.of("sessions", room.size(), "queueDepth", queueDepth,
+        "evictions", evictions != null ? evictions.get() : 0L);
+  }
+  
+  /**
+   * Gets the total queue depth of every session's outbox.
+   * @return The number of boards offered behind sends in flight.
+   */
+  public static int getQueueDepth() {
+    int queueDepth = 0;
+    for (SessionOutbox outbox : OUTBOXES.values()) {
+      queueDepth += outbox.getQueueDepth();
+    }
+    return queueDepth;
+  }
+  
+  /**
+   * Gets the number of sessions evicted from every room.
+   * @return The number of evictions.
+   */
+  public static long getEvictionCount() {
+    return EVICTIONS.get();
+  }
 
 }
@@ -0,0 +1,268 @@
+package controllers;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+
+/**
+ * Persists games to another GameStore in the background. Repeated writes to the same game are
+ * coalesced so only the latest gameboard survives, and a single writer flushes them in batched
+ * transactions.
+ */
+public class WriteBehindQueue implements GameStore {
+
+  /**
+   * A write waiting to be flushed.
+   */
+  private static class PendingWrite {
+
+    // The gameboard to save, or null to remove the game
+    private final GameBoard board;
+
+    // The last move already stored, or -1 to save the whole gameboard as a snapshot
+    private final int fromSeq;
+
+    // When the oldest coalesced write for the game was queued
+    private final long queuedNanos;
+
+    private PendingWrite(GameBoard board, int fromSeq, long queuedNanos) {
+      this.board = board;
+      this.fromSeq = fromSeq;
+      this.queuedNanos = queuedNanos;
+    }
+
+    /**
+     * Coalesces this write with the write queued before it for the same game.
+     * Moves played on the same gameboard extend the earlier write, so no logged move is lost;
+     * any other write replaces it.
+     * @param previous The earlier write, or null.
+     * @return The write to keep queued.
+     */
+    private PendingWrite after(PendingWrite previous) {
+      if (previous == null) {
+        return this;
+      } else if (fromSeq >= 0 && previous.board == board) {
+        return new PendingWrite(board, previous.fromSeq, previous.queuedNanos);
+      }
+      return new PendingWrite(board, fromSeq, previous.queuedNanos);
+    }
+
+  }
+
+  private final GameStore database;
+
+  private final int maxBatchSize;
+
+  private final ConcurrentMap<String, PendingWrite> pending = new ConcurrentHashMap<>();
+
+  private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "write-behind");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  // True while a flush triggered by the batch size is waiting to run
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+
+  /**
+   * Starts the background writer.
+   * @param database        The store to write to.
+   * @param flushIntervalMs The time between flushes, in milliseconds.
+   * @param maxBatchSize    The number of queued games that triggers an early flush,
+   *                        and the most games written per transaction.
+   */
+  public WriteBehindQueue(GameStore database, long flushIntervalMs, int maxBatchSize) {
+    this.database = database;
+    this.maxBatchSize = maxBatchSize;
+    writer.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Queues the gameboard to be saved, replacing any queued write for the same game.
+   * @param gameId The ID of the game.
+   * @param board  The gameboard to save.
+   */
+  @Override
+  public void set(String gameId, GameBoard board) {
+    enqueue(gameId, new PendingWrite(board, -1, System.nanoTime()));
+  }
+
+  /**
+   * Queues the moves played on the gameboard since the given move to be logged,
+   * merging them with any moves already queued for the same gameboard.
+   * @param gameId  The ID of the game.
+   * @param board   The gameboard the moves were played on.
+   * @param fromSeq The sequence number of the last move already stored.
+   */
+  @Override
+  public void recordMoves(String gameId, GameBoard board, int fromSeq) {
+    enqueue(gameId, new PendingWrite(board, fromSeq, System.nanoTime()));
+  }
+
+  /**
+   * Queues the game to be removed, replacing any queued write for the same game.
+   * @param gameId The ID of the game.
+   */
+  @Override
+  public void unset(String gameId) {
+    enqueue(gameId, new PendingWrite(null, -1, System.nanoTime()));
+  }
+
+  /**
+   * Queues a write, coalescing it with the write already queued for the game.
+   * @param gameId The ID of the game.
+   * @param write  The write to queue.
+   */
+  private void enqueue(String gameId, PendingWrite write) {
+    pending.compute(gameId, (id, previous) -> write.after(previous));
+    if (pending.size() >= maxBatchSize && flushRequested.compareAndSet(false, true)) {
+      writer.execute(() -> {
+        flushRequested.set(false);
+        flush();
+      });
+    }
+  }
+
+  /**
+   * Archives the game, flushing every queued write first.
+   * @param gameId The ID of the game.
+   * @throws SQLException An exception thrown when the game cannot be archived.
+   */
+  @Override
+  public void archive(String gameId) throws SQLException {
+    flush();
+    database.archive(gameId);
+  }
+
+  /**
+   * Gets the gameboard, flushing any queued write for it first.
+   * @param gameId The ID of the game.
+   * @return The gameboard or null.
+   * @throws SQLException An exception thrown when the gameboard cannot be read.
+   */
+  @Override
+  public GameBoard get(String gameId) throws SQLException {
+    final PendingWrite write = pending.get(gameId);
+    if (write != null && write.board == null) {
+      return null;
+    } else if (write != null) {
+      flush();
+    }
+    return database.get(gameId);
+  }
+
+  /**
+   * Loads every open or in-progress game, after flushing every queued write.
+   * @param consumer The consumer of each game ID and its gameboard.
+   * @throws SQLException An exception thrown when the games cannot be read.
+   */
+  @Override
+  public void loadActive(BiConsumer<String, GameBoard> consumer) throws SQLException {
+    flush();
+    database.loadActive(consumer);
+  }
+
+  /**
+   * Runs the given work. Writes it queues are flushed later, like any other write.
+   * @param transaction The work to run.
+   * @throws SQLException An exception thrown by the work.
+   */
+  @Override
+  public void inTransaction(Transaction transaction) throws SQLException {
+    transaction.run();
+  }
+
+  /**
+   * Gets the number of games waiting to be written.
+   * @return The number of queued games.
+   */
+  public int getPendingCount() {
+    return pending.size();
+  }
+
+  /**
+   * Gets how long the oldest queued write has been waiting.
+   * @return The persistence lag in milliseconds, or 0 if nothing is queued.
+   */
+  public long getLagMillis() {
+    long oldest = Long.MAX_VALUE;
+    for (PendingWrite write : pending.values()) {
+      oldest = Math.min(oldest, write.queuedNanos);
+    }
+    return oldest == Long.MAX_VALUE
+        ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest);
+  }
+
+  /**
+   * Writes every queued game, one transaction per batch.
+   * Writes that fail are queued again, coalesced with any newer write for the game.
+   */
+  public synchronized void flush() {
+    while (!pending.isEmpty()) {
+      // Take up to one batch of writes off the queue
+      final List<Map.Entry<String, PendingWrite>> batch = new ArrayList<>();
+      final Iterator<Map.Entry<String, PendingWrite>> it = pending.entrySet().iterator();
+      while (it.hasNext() && batch.size() < maxBatchSize) {
+        final Map.Entry<String, PendingWrite> entry = it.next();
+        if (pending.remove(entry.getKey(), entry.getValue())) {
+          batch.add(entry);
+        }
+      }
+
+      try {
+        database.inTransaction(() -> {
+          for (Map.Entry<String, PendingWrite> entry : batch) {
+            final PendingWrite write = entry.getValue();
+            if (write.board == null) {
+              database.unset(entry.getKey());
+            } else {
+              synchronized (write.board) {
+                if (write.fromSeq < 0) {
+                  database.set(entry.getKey(), write.board);
+                } else {
+                  // Moves played since the batch was taken are logged now, and skipped by the
+                  // store when their own write logs them again
+                  database.recordMoves(entry.getKey(), write.board, write.fromSeq);
+                }
+              }
+            }
+          }
+        });
+      } catch (SQLException e) {
+        e.printStackTrace();
+        for (Map.Entry<String, PendingWrite> entry : batch) {
+          pending.compute(entry.getKey(), (id, newer) ->
+              newer != null ? newer.after(entry.getValue()) : entry.getValue());
+        }
+        return;
+      }
+    }
+  }
+
+  /**
+   * Stops the background writer and flushes every queued write.
+   * The store written to is left open.
+   */
+  @Override
+  public void close() {
+    writer.shutdown();
+    try {
+      writer.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+}
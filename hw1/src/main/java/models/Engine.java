@@ -0,0 +1,54 @@
+package models;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A server-side opponent that plays as player 2.
+ */
+public interface Engine {
+
+  /**
+   * Gets the name the engine is selected and stored by.
+   * @return The engine name.
+   */
+  String getName();
+
+  /**
+   * Checks if the engine can play on the given board.
+   * @param board The board to play on.
+   * @return True if the engine supports the board, false otherwise.
+   */
+  boolean supports(GameBoard board);
+
+  /**
+   * Chooses a move for the player whose turn it is.
+   * @param board The board to play on, which must not be over.
+   * @return The chosen cell as x * size + y.
+   */
+  int chooseMove(GameBoard board);
+
+  /**
+   * Chooses a move for the player whose turn it is, without making the caller wait for a slow
+   * search. The board is read before this returns, so the caller may change it meanwhile.
+   * @param board The board to play on, which must not be over.
+   * @return The chosen cell as x * size + y, once it is chosen.
+   */
+  default CompletableFuture<Integer> chooseMoveAsync(GameBoard board) {
+    return CompletableFuture.completedFuture(chooseMove(board));
+  }
+
+  /**
+   * Creates the engine with the given name.
+   * @param name The engine name.
+   * @return The engine, or null if no engine has that name.
+   */
+  static Engine forName(String name) {
+    if (PerfectPlayEngine.NAME.equals(name)) {
+      return PerfectPlayEngine.INSTANCE;
+    } else if (MctsEngine.NAME.equals(name)) {
+      return MctsEngine.DEFAULT;
+    }
+    return null;
+  }
+
+}
@@ -1,9 +1,40 @@
 package models;
 
-import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
 public class GameBoard {
 
+  // Smallest board size and win length
+  public static final int MIN_SIZE = 3;
+
+  // Largest board size
+  public static final int MAX_SIZE = 19;
+
+  // Steps (dx, dy) along a row, a column and the two diagonals
+  private static final int[] DIRECTIONS = {0, 1, 1, 0, 1, 1, 1, -1};
+
+  // Mask of every cell on a classic board, where cell (x, y) is bit x * 3 + y
+  private static final int FULL_MASK = 0x1FF;
+
+  // Masks of the three rows, three columns and two diagonals
+  private static final int[] WINNING_LINES = {
+    0x007, 0x038, 0x1C0,
+    0x049, 0x092, 0x124,
+    0x111, 0x054
+  };
+
+  // True at index m if the cells in mask m contain a winning line
+  private static final boolean[] WINNING = new boolean[FULL_MASK + 1];
+
+  static {
+    for (int mask = 0; mask <= FULL_MASK; mask++) {
+      for (int line : WINNING_LINES) {
+        WINNING[mask] |= (mask & line) == line;
+      }
+    }
+  }
+
   private Player p1;
 
   private Player p2;
@@ -18,6 +49,48 @@ public class GameBoard {
 
   private boolean isDraw;
 
+  private int winLength;
+
+  // Version of the board's state, which counts the changes made to this board
+  private transient long version;
+
+  // Encoding of the board at the version it was made, or null until the first encoding
+  private transient volatile Frame frame;
+
+  /**
+   * The JSON encoding of one version of a board, in text and in UTF-8.
+   */
+  private static final class Frame {
+
+    private final long version;
+
+    private final String json;
+
+    private final byte[] bytes;
+
+    private Frame(long version, String json) {
+      this.version = version;
+      this.json = json;
+      this.bytes = json.getBytes(StandardCharsets.UTF_8);
+    }
+
+  }
+
+  // Engine playing as player 2, or null if player 2 is a person
+  private transient Engine engine;
+
+  // Number of filled cells
+  private transient int moveCount;
+
+  // Cell (x * size + y) of each move by sequence number - 1, or -1 if the move was restored
+  private transient int[] moveHistory;
+
+  // On a classic board, player 1's cells in bits 0-8 and player 2's cells in bits 9-17
+  private transient int bitboard;
+
+  // False until the move count and bitboard reflect the current char board
+  private transient boolean boardSynced;
+
   /**
    * Constructs a new game board.
    * @param p1          Player 1 object.
@@ -30,6 +103,22 @@ public class GameBoard {
    */
   public GameBoard(Player p1, Player p2, boolean gameStarted,
       int turn, char[][] boardState, int winner, boolean isDraw) {
+    this(p1, p2, gameStarted, turn, boardState, winner, isDraw, boardState.length);
+  }
+
+  /**
+   * Constructs a new game board that is won by winLength cells in a row.
+   * @param p1          Player 1 object.
+   * @param p2          Player 2 object.
+   * @param gameStarted True if the game has started, false otherwise.
+   * @param turn        The player whose turn it is.
+   * @param boardState  A square 2D array representing the board.
+   * @param winner      The number of the winning player.
+   * @param isDraw      True if the game results in a draw.
+   * @param winLength   The number of cells in a row needed to win.
+   */
+  public GameBoard(Player p1, Player p2, boolean gameStarted,
+      int turn, char[][] boardState, int winner, boolean isDraw, int winLength) {
     super();
     this.p1 = p1;
     this.p2 = p2;
@@ -38,6 +127,7 @@ public class GameBoard {
     this.boardState = boardState;
     this.winner = winner;
     this.isDraw = isDraw;
+    this.winLength = winLength;
   }
 
   /**
@@ -45,13 +135,24 @@ public class GameBoard {
    * @param p1Type Player 1's type.
    */
   public GameBoard(char p1Type) {
+    this(p1Type, 3, 3);
+  }
+
+  /**
+   * Starts a fresh game on a size x size board that is won by winLength cells in a row.
+   * @param p1Type    Player 1's type.
+   * @param size      The number of rows and columns.
+   * @param winLength The number of cells in a row needed to win.
+   */
+  public GameBoard(char p1Type, int size, int winLength) {
     super();
     this.p1 = new Player(p1Type, 1);
     this.gameStarted = false;
     this.turn = 1;
-    this.boardState = new char[3][3];
+    this.boardState = new char[size][size];
     this.winner = 0;
     this.isDraw = false;
+    this.winLength = winLength;
   }
 
   /**
@@ -68,6 +169,7 @@ public class GameBoard {
    */
   public void setP1(Player p1) {
     this.p1 = p1;
+    touch();
   }
 
   /**
@@ -84,6 +186,7 @@ public class GameBoard {
    */
   public void setP2(Player p2) {
     this.p2 = p2;
+    touch();
   }
 
   /**
@@ -108,6 +211,7 @@ public class GameBoard {
    */
   public void setGameStarted(boolean gameStarted) {
     this.gameStarted = gameStarted;
+    touch();
   }
 
   /**
@@ -124,6 +228,7 @@ public class GameBoard {
    */
   public void setTurn(int turn) {
     this.turn = turn;
+    touch();
   }
 
   /**
@@ -140,6 +245,41 @@ public class GameBoard {
    */
   public void setBoardState(char[][] boardState) {
     this.boardState = boardState;
+    this.boardSynced = false;
+    touch();
+  }
+
+  /**
+   * Gets the number of rows and columns of the board.
+   * @return The board size.
+   */
+  public int getSize() {
+    return boardState.length;
+  }
+
+  /**
+   * Gets the number of cells in a row needed to win. Boards serialized before the win length
+   * was stored, which deserialize with none, are won by a full row.
+   * @return The win length.
+   */
+  public int getWinLength() {
+    return winLength > 0 || boardState == null ? winLength : boardState.length;
+  }
+
+  /**
+   * Gets the engine playing as player 2.
+   * @return The engine, or null if player 2 is a person.
+   */
+  public Engine getEngine() {
+    return engine;
+  }
+
+  /**
+   * Sets the engine playing as player 2.
+   * @param engine The engine, or null if player 2 is a person.
+   */
+  public void setEngine(Engine engine) {
+    this.engine = engine;
   }
 
   /**
@@ -156,6 +296,7 @@ public class GameBoard {
    */
   public void setWinner(int winner) {
     this.winner = winner;
+    touch();
   }
 
   /**
@@ -172,6 +313,7 @@ public class GameBoard {
    */
   public void setDraw(boolean isDraw) {
     this.isDraw = isDraw;
+    touch();
   }
 
   /**
@@ -185,6 +327,22 @@ public class GameBoard {
     }
     p2 = new Player(p1.getType() == 'X' ? 'O' : 'X', 2);
     gameStarted = true;
+    touch();
+  }
+
+  /**
+   * Lets an engine join the game as the second player, and starts the game.
+   * The engine then replies to every move of the first player within playTurn.
+   * @param engine The engine to play as player 2.
+   * @throws Exception A simple exception thrown if the engine cannot play on this board,
+   *                   or if the game has already started and has not ended.
+   */
+  public void joinGame(Engine engine) throws Exception {
+    if (!engine.supports(this)) {
+      throw new Exception("Opponent not supported on this board");
+    }
+    joinGame();
+    this.engine = engine;
   }
 
   /**
@@ -197,118 +355,272 @@ public class GameBoard {
    *                   or it's not the player's turn.
    */
   public void playTurn(Player player, int x, int y) throws Exception {
+    placeMove(player, x, y);
+    if (isEngineTurn()) {
+      // Reply for player 2 within the same turn
+      final int cell = engine.chooseMove(this);
+      placeMove(p2, cell / boardState.length, cell % boardState.length);
+    }
+    touch();
+  }
+
+  /**
+   * Plays a move for the given player in the (x, y) coordinate specified, leaving any reply
+   * of the engine to the caller. Callers that cannot wait for the engine ask it for its move
+   * once this returns, and play that move in turn.
+   * @param player The player to play the move for.
+   * @param x      The x-position.
+   * @param y      The y-position.
+   * @throws Exception A simple exception if the move cannot be made, as in playTurn.
+   */
+  public void playMove(Player player, int x, int y) throws Exception {
+    placeMove(player, x, y);
+    touch();
+  }
+
+  /**
+   * Checks if it is the engine's turn to reply.
+   * @return True if an engine plays as player 2, it is player 2's turn and the game is not over.
+   */
+  public boolean isEngineTurn() {
+    return engine != null && turn == 2 && !isGameOver();
+  }
+
+  /**
+   * Places the given player's mark in the (x, y) coordinate specified, without giving the
+   * board a new version.
+   * @param player The player to place the mark for.
+   * @param x      The x-position.
+   * @param y      The y-position.
+   * @throws Exception A simple exception if the move cannot be made, as in playTurn.
+   */
+  private void placeMove(Player player, int x, int y) throws Exception {
     final char type = player.getType();
-    if (x < 0 || y < 0 || x > 2 || y > 2) {
+    final int size = boardState.length;
+    if (x < 0 || y < 0 || x >= size || y >= size) {
       throw new Exception("Invalid position");
     } else if (boardState[x][y] != '\0') {
       throw new Exception("Position already filled");
     } else if (player.getId() != turn) {
       throw new Exception("Not your turn");
     }
+    syncBoard();
     boardState[x][y] = type;
-    updateWinner();
+    moveHistory[moveCount++] = x * size + y;
+    if (isClassic()) {
+      bitboard |= 1 << (x * 3 + y + (turn - 1) * 9);
+      updateWinner(WINNING[(bitboard >>> ((turn - 1) * 9)) & FULL_MASK]);
+    } else {
+      updateWinner(hasLineThrough(x, y, type));
+    }
   }
 
   /**
-   * Updates the Gameboard with the winner and whether or not there is a draw.
+   * Copies the board with its move history, so the copy can be read while this board changes.
+   * @return A new gameboard in the same state, with the same engine.
    */
-  private void updateWinner() {
-    // True if P1 wins
-    boolean p1Wins = false;
-    // True if P2 wins
-    boolean p2Wins = false;
-    // True if the board contains an empty spot
-    boolean containsEmpty = false;
-
-    // Counts the number of P1 moves (reused)
-    int countP1 = 0;
-    // Counts the number of P2 moves (reused)
-    int countP2 = 0;
-    // Stores the currently located move in each iteration
-    char move = '\0';
-
-    // Check horizontally
-    for (int i = 0; i < 3; i++) {
-      countP1 = 0;
-      countP2 = 0;
-      for (int j = 0; j < 3; j++) {
-        move = boardState[i][j];
-        countP1 += move == p1.getType() ? 1 : 0;
-        countP2 += move == p2.getType() ? 1 : 0;
-        containsEmpty = containsEmpty || move == '\0';
-      }
-      if (countP1 == 3) {
-        p1Wins = true;
-      } else if (countP2 == 3) {
-        p2Wins = true;
-      }
+  public GameBoard copy() {
+    syncBoard();
+    final char[][] state = new char[boardState.length][];
+    for (int i = 0; i < state.length; i++) {
+      state[i] = boardState[i].clone();
     }
+    final GameBoard copy = new GameBoard(copyPlayer(p1), copyPlayer(p2), gameStarted, turn,
+        state, winner, isDraw, getWinLength());
+    copy.engine = engine;
+    copy.moveCount = moveCount;
+    copy.moveHistory = moveHistory.clone();
+    copy.bitboard = bitboard;
+    copy.boardSynced = true;
+    return copy;
+  }
 
-    // Check vertically
-    for (int i = 0; i < 3; i++) {
-      countP1 = 0;
-      countP2 = 0;
-      for (int j = 0; j < 3; j++) {
-        move = boardState[j][i];
-        countP1 += move == p1.getType() ? 1 : 0;
-        countP2 += move == p2.getType() ? 1 : 0;
-      }
-      if (countP1 == 3) {
-        p1Wins = true;
-      } else if (countP2 == 3) {
-        p2Wins = true;
-      }
-    }
+  private static Player copyPlayer(Player player) {
+    return player != null ? new Player(player.getType(), player.getId()) : null;
+  }
+
+  /**
+   * Gets the version of the board's state. Each board counts its own changes from 0, so
+   * versions only order the states of one board; a replaced board starts over.
+   * @return The version.
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Gives the board a new version after a change.
+   */
+  private void touch() {
+    version++;
+  }
 
-    // Check diagonally from top-left
-    countP1 = 0;
-    countP2 = 0;
-    for (int i = 0; i < 3; i++) {
-      move = boardState[i][i];
-      countP1 += move == p1.getType() ? 1 : 0;
-      countP2 += move == p2.getType() ? 1 : 0;
+  /**
+   * Gets the number of moves played, which is also the sequence number of the last move.
+   * @return The number of filled cells.
+   */
+  public int getMoveCount() {
+    syncBoard();
+    return moveCount;
+  }
+
+  /**
+   * Gets the cell of a move played on this board. Player 1 plays the odd sequence numbers
+   * and player 2 the even ones.
+   * @param seq The sequence number of the move, starting at 1.
+   * @return The cell as x * size + y, or -1 if the move was restored rather than played.
+   */
+  public int getMove(int seq) {
+    syncBoard();
+    return moveHistory[seq - 1];
+  }
+
+  /**
+   * Gets the classic board as a bitboard.
+   * @return Player 1's cells in bits 0-8 and player 2's cells in bits 9-17.
+   */
+  int getBitboard() {
+    syncBoard();
+    return bitboard;
+  }
+
+  /**
+   * Checks if the given cells of a classic board contain a winning line.
+   * @param mask The cells, where cell (x, y) is bit x * 3 + y.
+   * @return True if the cells contain a row, column or diagonal, false otherwise.
+   */
+  static boolean isWinningMask(int mask) {
+    return WINNING[mask];
+  }
+
+  /**
+   * Checks if this is a 3x3 board with 3 in a row, which is tracked by the bitboard.
+   * @return True if the board is classic tic-tac-toe, false otherwise.
+   */
+  private boolean isClassic() {
+    return boardState.length == 3 && getWinLength() == 3;
+  }
+
+  /**
+   * Rebuilds the move count and bitboard from the char board if the char board was replaced.
+   */
+  private void syncBoard() {
+    if (boardSynced) {
+      return;
     }
-    if (countP1 == 3) {
-      p1Wins = true;
-    } else if (countP2 == 3) {
-      p2Wins = true;
+    final int size = boardState.length;
+    final boolean classic = isClassic();
+    moveCount = 0;
+    bitboard = 0;
+    moveHistory = new int[size * size];
+    Arrays.fill(moveHistory, -1);
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        final char move = boardState[i][j];
+        if (move != '\0') {
+          moveCount++;
+          if (classic) {
+            bitboard |= 1 << (i * 3 + j + (move == p1.getType() ? 0 : 9));
+          }
+        }
+      }
     }
+    boardSynced = true;
+  }
 
-    // Check diagonally from top-right
-    countP1 = 0;
-    countP2 = 0;
-    for (int i = 0; i < 3; i++) {
-      move = boardState[i][2 - i];
-      countP1 += move == p1.getType() ? 1 : 0;
-      countP2 += move == p2.getType() ? 1 : 0;
+  /**
+   * Checks if the move at (x, y) completes a line of winLength cells.
+   * Only the four lines through the move are walked, and each for at most winLength cells.
+   * @param x    The x-position of the move.
+   * @param y    The y-position of the move.
+   * @param type The type of the player who moved.
+   * @return True if the move wins the game, false otherwise.
+   */
+  private boolean hasLineThrough(int x, int y, char type) {
+    final int winLength = getWinLength();
+    for (int d = 0; d < DIRECTIONS.length; d += 2) {
+      final int dx = DIRECTIONS[d];
+      final int dy = DIRECTIONS[d + 1];
+      final int count = 1 + countRun(x, y, dx, dy, type, winLength)
+          + countRun(x, y, -dx, -dy, type, winLength);
+      if (count >= winLength) {
+        return true;
+      }
     }
-    if (countP1 == 3) {
-      p1Wins = true;
-    } else if (countP2 == 3) {
-      p2Wins = true;
+    return false;
+  }
+
+  /**
+   * Counts the cells of the given type next to (x, y) in one direction.
+   * @param x         The x-position to start from.
+   * @param y         The y-position to start from.
+   * @param dx        The x-step of the direction.
+   * @param dy        The y-step of the direction.
+   * @param type      The type of the player who moved.
+   * @param winLength The number of cells in a row needed to win.
+   * @return The number of consecutive cells, capped at winLength - 1.
+   */
+  private int countRun(int x, int y, int dx, int dy, char type, int winLength) {
+    final int size = boardState.length;
+    int count = 0;
+    int i = x + dx;
+    int j = y + dy;
+    while (count < winLength - 1 && i >= 0 && j >= 0 && i < size && j < size
+        && boardState[i][j] == type) {
+      count++;
+      i += dx;
+      j += dy;
     }
+    return count;
+  }
 
-    if (!p1Wins && !p2Wins && !containsEmpty) {
+  /**
+   * Updates the Gameboard with the winner and whether or not there is a draw.
+   * Only the player who just moved can have won.
+   * @param won True if the player who just moved completed a line.
+   */
+  private void updateWinner(boolean won) {
+    if (won) {
+      // The current player wins
+      winner = turn;
+    } else if (moveCount == boardState.length * boardState.length) {
       // Draw situation
-      setDraw(true);
-    } else if (p1Wins) {
-      // P1 wins
-      setWinner(1);
-    } else if (p2Wins) {
-      // P2 wins
-      setWinner(2);
+      isDraw = true;
     } else {
       // Increment the turn
-      setTurn(turn == 1 ? 2 : 1);
+      turn = turn == 1 ? 2 : 1;
     }
   }
 
   /**
-   * Convert this Board into a JSON string.
+   * Convert this Board into a JSON string. The string is made once per version of the board
+   * and shared until the next change, which must go through the board's methods.
    * @return A JSON Board string.
    */
   public String toJson() {
-    return new Gson().toJson(this);
+    return encode().json;
+  }
+
+  /**
+   * Convert this Board into JSON encoded in UTF-8, made once per version like toJson.
+   * @return The JSON Board bytes, shared by every caller and never to be modified.
+   */
+  public byte[] toJsonBytes() {
+    return encode().bytes;
+  }
+
+  /**
+   * Gets the encoding of the current version, encoding the board if it changed since.
+   * @return The frame of the current version.
+   */
+  private Frame encode() {
+    final Frame current = frame;
+    if (current != null && current.version == version) {
+      return current;
+    }
+    final Frame encoded = new Frame(version, JsonEncoder.encode(this));
+    frame = encoded;
+    return encoded;
   }
 
 }
@@ -0,0 +1,207 @@
+package models;
+
+/**
+ * Writes GameBoards and Messages as JSON without reflection. The output is exactly what Gson
+ * writes for them by default: fields in declaration order, null fields left out, chars as
+ * one-character strings, and strings escaped the HTML-safe way, so an empty cell comes out
+ * as an escaped NUL. Each thread reuses one buffer, and the fixed parts of the output are
+ * kept as constants.
+ */
+public final class JsonEncoder {
+
+  // Largest buffer kept for reuse by a thread
+  private static final int MAX_BUFFER_SIZE = 1 << 16;
+
+  private static final String P1 = "{\"p1\":";
+  private static final String P2 = ",\"p2\":";
+  private static final String GAME_STARTED = ",\"gameStarted\":";
+  private static final String TURN = ",\"turn\":";
+  private static final String BOARD_STATE = ",\"boardState\":";
+  private static final String WINNER = ",\"winner\":";
+  private static final String IS_DRAW = ",\"isDraw\":";
+  private static final String WIN_LENGTH = ",\"winLength\":";
+  private static final String PLAYER_TYPE = "{\"type\":";
+  private static final String PLAYER_ID = ",\"id\":";
+  private static final String MOVE_VALIDITY = "{\"moveValidity\":";
+  private static final String CODE = ",\"code\":";
+  private static final String MESSAGE = ",\"message\":";
+
+  // Escaped form of each char below 128 that needs one, or null
+  private static final String[] ESCAPES = new String[128];
+
+  // Each char below 128 as a JSON string, such as the escaped NUL of an empty cell
+  private static final String[] CHAR_STRINGS = new String[128];
+
+  static {
+    for (int c = 0; c < 0x20; c++) {
+      ESCAPES[c] = String.format("\\u%04x", c);
+    }
+    ESCAPES['"'] = "\\\"";
+    ESCAPES['\\'] = "\\\\";
+    ESCAPES['\t'] = "\\t";
+    ESCAPES['\b'] = "\\b";
+    ESCAPES['\n'] = "\\n";
+    ESCAPES['\r'] = "\\r";
+    ESCAPES['\f'] = "\\f";
+    ESCAPES['<'] = "\\u003c";
+    ESCAPES['>'] = "\\u003e";
+    ESCAPES['&'] = "\\u0026";
+    ESCAPES['='] = "\\u003d";
+    ESCAPES['\''] = "\\u0027";
+    for (int c = 0; c < CHAR_STRINGS.length; c++) {
+      final StringBuilder out = new StringBuilder();
+      writeString(String.valueOf((char) c), out);
+      CHAR_STRINGS[c] = out.toString();
+    }
+  }
+
+  private static final ThreadLocal<StringBuilder> BUFFER =
+      ThreadLocal.withInitial(() -> new StringBuilder(256));
+
+  private JsonEncoder() {
+  }
+
+  /**
+   * Writes a gameboard as JSON.
+   * @param board The gameboard.
+   * @return The JSON string, the same as Gson's.
+   */
+  public static String encode(GameBoard board) {
+    final StringBuilder out = buffer();
+    final Player p1 = board.getP1();
+    final Player p2 = board.getP2();
+    final char[][] boardState = board.getBoardState();
+
+    // The first field present opens the object
+    char separator = '{';
+    if (p1 != null) {
+      out.append(P1);
+      writePlayer(p1, out);
+      separator = ',';
+    }
+    if (p2 != null) {
+      appendField(out, separator, P2);
+      writePlayer(p2, out);
+      separator = ',';
+    }
+    appendField(out, separator, GAME_STARTED).append(board.isGameStarted());
+    out.append(TURN).append(board.getTurn());
+    if (boardState != null) {
+      out.append(BOARD_STATE);
+      writeBoardState(boardState, out);
+    }
+    out.append(WINNER).append(board.getWinner());
+    out.append(IS_DRAW).append(board.isDraw());
+    out.append(WIN_LENGTH).append(board.getWinLength());
+    return out.append('}').toString();
+  }
+
+  /**
+   * Writes a message as JSON.
+   * @param message The message.
+   * @return The JSON string, the same as Gson's.
+   */
+  public static String encode(Message message) {
+    final StringBuilder out = buffer();
+    out.append(MOVE_VALIDITY).append(message.isMoveValid());
+    out.append(CODE).append(message.getCode());
+    if (message.getMessage() != null) {
+      out.append(MESSAGE);
+      writeString(message.getMessage(), out);
+    }
+    return out.append('}').toString();
+  }
+
+  /**
+   * Gets this thread's buffer, emptied.
+   * @return The buffer.
+   */
+  private static StringBuilder buffer() {
+    StringBuilder out = BUFFER.get();
+    if (out.capacity() > MAX_BUFFER_SIZE) {
+      // Let a buffer grown by an unusually large board go
+      out = new StringBuilder(256);
+      BUFFER.set(out);
+    }
+    out.setLength(0);
+    return out;
+  }
+
+  /**
+   * Appends a field name, opening the object instead of separating it if no field came first.
+   * @param out       The buffer.
+   * @param separator '{' if the field is the first one, ',' otherwise.
+   * @param name      The field name, with its leading comma.
+   * @return The buffer.
+   */
+  private static StringBuilder appendField(StringBuilder out, char separator, String name) {
+    return out.append(separator).append(name, 1, name.length());
+  }
+
+  private static void writePlayer(Player player, StringBuilder out) {
+    out.append(PLAYER_TYPE);
+    writeChar(player.getType(), out);
+    out.append(PLAYER_ID).append(player.getId()).append('}');
+  }
+
+  private static void writeBoardState(char[][] boardState, StringBuilder out) {
+    out.append('[');
+    for (int i = 0; i < boardState.length; i++) {
+      if (i > 0) {
+        out.append(',');
+      }
+      final char[] row = boardState[i];
+      if (row == null) {
+        out.append("null");
+        continue;
+      }
+      out.append('[');
+      for (int j = 0; j < row.length; j++) {
+        if (j > 0) {
+          out.append(',');
+        }
+        writeChar(row[j], out);
+      }
+      out.append(']');
+    }
+    out.append(']');
+  }
+
+  private static void writeChar(char c, StringBuilder out) {
+    if (c < CHAR_STRINGS.length) {
+      out.append(CHAR_STRINGS[c]);
+    } else {
+      writeString(String.valueOf(c), out);
+    }
+  }
+
+  /**
+   * Writes a string in quotes, escaped as Gson escapes it by default.
+   * @param value The string.
+   * @param out   The buffer.
+   */
+  private static void writeString(String value, StringBuilder out) {
+    out.append('"');
+    int last = 0;
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      final char c = value.charAt(i);
+      final String escape;
+      if (c < ESCAPES.length) {
+        escape = ESCAPES[c];
+      } else if (c == '\u2028') {
+        escape = "\\u2028";
+      } else if (c == '\u2029') {
+        escape = "\\u2029";
+      } else {
+        escape = null;
+      }
+      if (escape != null) {
+        out.append(value, last, i).append(escape);
+        last = i + 1;
+      }
+    }
+    out.append(value, last, length).append('"');
+  }
+
+}
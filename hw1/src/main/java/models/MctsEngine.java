@@ -0,0 +1,435 @@
+package models;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An engine that plays boards of any size with root-parallel Monte Carlo tree search.
+ * Each worker of a ForkJoinPool grows its own tree for the move's time budget, and the
+ * root visit counts of all trees are summed to pick the move. The search runs on the pool
+ * without blocking the thread that asked for the move.
+ */
+public class MctsEngine implements Engine {
+
+  public static final String NAME = "mcts";
+
+  // Time budget per move of the default engine
+  public static final long DEFAULT_BUDGET_MILLIS = 500;
+
+  public static final MctsEngine DEFAULT = new MctsEngine(DEFAULT_BUDGET_MILLIS,
+      Runtime.getRuntime().availableProcessors());
+
+  // Number of tree nodes each worker can hold
+  private static final int MAX_NODES = 1 << 18;
+
+  // Weight of exploration against exploitation in UCT
+  private static final double EXPLORATION = Math.sqrt(2);
+
+  // Steps (dx, dy) along a row, a column and the two diagonals
+  private static final int[] DIRECTIONS = {0, 1, 1, 0, 1, 1, 1, -1};
+
+  private final long budgetNanos;
+
+  private final int parallelism;
+
+  private final ForkJoinPool pool;
+
+  // Search state of each worker thread, reused across moves
+  private final ThreadLocal<Searcher> searchers = ThreadLocal.withInitial(Searcher::new);
+
+  // Total playouts and wall-clock search time across all moves
+  private final AtomicLong playouts = new AtomicLong();
+  private final AtomicLong searchNanos = new AtomicLong();
+
+  /**
+   * Constructs an engine with its own pool of search workers.
+   * @param budgetMillis The time to search for each move, in milliseconds.
+   * @param parallelism  The number of workers, each growing its own tree.
+   */
+  public MctsEngine(long budgetMillis, int parallelism) {
+    this.budgetNanos = budgetMillis * 1_000_000L;
+    this.parallelism = parallelism;
+    this.pool = new ForkJoinPool(parallelism);
+  }
+
+  /**
+   * Gets the average number of playouts per second of wall-clock search time,
+   * summed over all workers.
+   * @return The playouts per second, or 0 before the first search.
+   */
+  public double getPlayoutsPerSecond() {
+    final long nanos = searchNanos.get();
+    return nanos == 0 ? 0 : playouts.get() * 1e9 / nanos;
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  /**
+   * Checks if the engine can search the given board: a line must be able to win it, and every
+   * worker's tree must hold at least the first two moves from an empty board.
+   * @param board The board to play on.
+   * @return True if the engine supports the board, false otherwise.
+   */
+  @Override
+  public boolean supports(GameBoard board) {
+    final int size = board.getSize();
+    final int winLength = board.getWinLength();
+    return winLength >= GameBoard.MIN_SIZE && winLength <= size
+        && 1 + (long) size * size * size * size <= MAX_NODES;
+  }
+
+  @Override
+  public int chooseMove(GameBoard board) {
+    return chooseMoveAsync(board).join();
+  }
+
+  @Override
+  public CompletableFuture<Integer> chooseMoveAsync(GameBoard board) {
+    final int size = board.getSize();
+    final int cellCount = size * size;
+    final char[][] boardState = board.getBoardState();
+    final char p1Type = board.getP1().getType();
+
+    // Encode the board as 0 for empty, 1 for player 1 and 2 for player 2
+    final byte[] root = new byte[cellCount];
+    int firstEmpty = -1;
+    for (int i = 0; i < size; i++) {
+      for (int j = 0; j < size; j++) {
+        final char move = boardState[i][j];
+        root[i * size + j] = (byte) (move == '\0' ? 0 : move == p1Type ? 1 : 2);
+        if (move == '\0' && firstEmpty < 0) {
+          firstEmpty = i * size + j;
+        }
+      }
+    }
+    final int fallback = firstEmpty;
+
+    final int mover = board.getTurn();
+    final int winLength = board.getWinLength();
+    final long start = System.nanoTime();
+    final long deadline = start + budgetNanos;
+    @SuppressWarnings("unchecked")
+    final CompletableFuture<int[]>[] results = new CompletableFuture[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      results[i] = CompletableFuture.supplyAsync(
+          () -> searchers.get().search(root, size, winLength, mover, deadline), pool);
+    }
+
+    // Sum the root visits of every worker's tree once all of them are done
+    return CompletableFuture.allOf(results).handle((done, failure) -> {
+      final long[] visits = new long[cellCount];
+      long total = 0;
+      for (CompletableFuture<int[]> result : results) {
+        if (result.isCompletedExceptionally()) {
+          continue;
+        }
+        final int[] counts = result.join();
+        for (int cell = 0; cell < cellCount; cell++) {
+          visits[cell] += counts[cell];
+        }
+        total += counts[cellCount];
+      }
+      if (failure != null) {
+        failure.printStackTrace();
+      }
+      playouts.addAndGet(total);
+      searchNanos.addAndGet(System.nanoTime() - start);
+
+      int best = fallback;
+      for (int cell = 0; cell < cellCount; cell++) {
+        if (root[cell] == 0 && visits[cell] > visits[best]) {
+          best = cell;
+        }
+      }
+      return best;
+    });
+  }
+
+  /**
+   * The tree and scratch board of one worker. Nodes live in preallocated arrays, and
+   * playouts run on a reused board, so the search loop does not allocate.
+   */
+  private static class Searcher {
+
+    // Cell played to reach each node
+    private final int[] nodeMove = new int[MAX_NODES];
+
+    // Index of each node's first child, whose siblings follow it
+    private final int[] firstChild = new int[MAX_NODES];
+
+    // Number of children of each node, or -1 if the node is not expanded
+    private final int[] childCount = new int[MAX_NODES];
+
+    // Number of playouts through each node
+    private final int[] visits = new int[MAX_NODES];
+
+    // Score of each node for the player who moved into it: 1 per win and 0.5 per draw
+    private final float[] wins = new float[MAX_NODES];
+
+    private int nodeCount;
+
+    // Scratch board, its empty cells, and the slot of each cell in the empty cells
+    private byte[] cells = new byte[0];
+    private int[] empties = new int[0];
+    private int[] slots = new int[0];
+    private int emptyCount;
+
+    // Empty cells of the searched position
+    private int[] rootEmpties = new int[0];
+    private int[] rootSlots = new int[0];
+    private int rootEmptyCount;
+
+    // Nodes visited by the current iteration
+    private int[] path = new int[1];
+
+    private int size;
+    private int winLength;
+
+    // State of the xorshift random number generator
+    private long seed = System.nanoTime() | 1;
+
+    /**
+     * Searches the given position until the deadline.
+     * @param root      The position, with 0 for empty, 1 for player 1 and 2 for player 2.
+     * @param size      The number of rows and columns.
+     * @param winLength The number of cells in a row needed to win.
+     * @param mover     The player to move.
+     * @param deadline  The System.nanoTime() at which to stop.
+     * @return The visits of each cell's root child, followed by the number of playouts.
+     */
+    int[] search(byte[] root, int size, int winLength, int mover, long deadline) {
+      reset(root, size, winLength);
+      int iterations = 0;
+      // Check the clock every 64 iterations
+      while ((iterations & 63) != 0 || System.nanoTime() < deadline) {
+        iterate(root, mover);
+        iterations++;
+      }
+
+      final int[] result = new int[root.length + 1];
+      for (int c = firstChild[0]; c < firstChild[0] + Math.max(childCount[0], 0); c++) {
+        result[nodeMove[c]] = visits[c];
+      }
+      result[root.length] = iterations;
+      return result;
+    }
+
+    /**
+     * Clears the tree and sizes the scratch board for the given position.
+     * @param root      The position to search.
+     * @param size      The number of rows and columns.
+     * @param winLength The number of cells in a row needed to win.
+     */
+    private void reset(byte[] root, int size, int winLength) {
+      this.size = size;
+      this.winLength = winLength;
+      if (cells.length != root.length) {
+        cells = new byte[root.length];
+        empties = new int[root.length];
+        slots = new int[root.length];
+        rootEmpties = new int[root.length];
+        rootSlots = new int[root.length];
+        path = new int[root.length + 1];
+      }
+      rootEmptyCount = 0;
+      for (int cell = 0; cell < root.length; cell++) {
+        if (root[cell] == 0) {
+          rootSlots[cell] = rootEmptyCount;
+          rootEmpties[rootEmptyCount++] = cell;
+        }
+      }
+      nodeCount = 1;
+      nodeMove[0] = -1;
+      childCount[0] = -1;
+      visits[0] = 0;
+      wins[0] = 0;
+    }
+
+    /**
+     * Runs one selection, expansion, playout and backpropagation.
+     * @param root  The position to search.
+     * @param mover The player to move at the root.
+     */
+    private void iterate(byte[] root, int mover) {
+      System.arraycopy(root, 0, cells, 0, root.length);
+      System.arraycopy(rootEmpties, 0, empties, 0, rootEmptyCount);
+      System.arraycopy(rootSlots, 0, slots, 0, root.length);
+      emptyCount = rootEmptyCount;
+
+      int node = 0;
+      int depth = 0;
+      int player = mover;
+      int result = -1;
+      path[depth++] = 0;
+
+      // Select down the tree, expanding the first leaf that has been visited before
+      while (true) {
+        if (childCount[node] < 0) {
+          if ((node != 0 && visits[node] == 0) || nodeCount + emptyCount > MAX_NODES) {
+            break;
+          }
+          expand(node);
+        }
+        node = select(node);
+        final int cell = nodeMove[node];
+        place(cell, player);
+        path[depth++] = node;
+        if (winsAt(cell, player)) {
+          result = player;
+          break;
+        } else if (emptyCount == 0) {
+          result = 0;
+          break;
+        }
+        player = 3 - player;
+      }
+
+      if (result < 0) {
+        result = playout(player);
+      }
+
+      // Credit each node to the player who moved into it, which alternates from the root mover
+      visits[0]++;
+      for (int d = 1; d < depth; d++) {
+        final int n = path[d];
+        final int movedBy = (d & 1) == 1 ? mover : 3 - mover;
+        visits[n]++;
+        wins[n] += result == movedBy ? 1f : result == 0 ? 0.5f : 0f;
+      }
+    }
+
+    /**
+     * Adds a child to the node for every empty cell.
+     * @param node The node to expand.
+     */
+    private void expand(int node) {
+      firstChild[node] = nodeCount;
+      childCount[node] = emptyCount;
+      for (int i = 0; i < emptyCount; i++) {
+        final int child = nodeCount++;
+        nodeMove[child] = empties[i];
+        childCount[child] = -1;
+        visits[child] = 0;
+        wins[child] = 0;
+      }
+    }
+
+    /**
+     * Picks the child with the highest UCT score, trying unvisited children first.
+     * @param node The expanded node to select from.
+     * @return The selected child.
+     */
+    private int select(int node) {
+      final int first = firstChild[node];
+      final int count = childCount[node];
+      final double logVisits = Math.log(Math.max(visits[node], 1));
+      final int offset = nextInt(count);
+      int best = first;
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for (int k = 0; k < count; k++) {
+        final int child = first + (k + offset) % count;
+        final int n = visits[child];
+        if (n == 0) {
+          return child;
+        }
+        final double score = wins[child] / n + EXPLORATION * Math.sqrt(logVisits / n);
+        if (score > bestScore) {
+          bestScore = score;
+          best = child;
+        }
+      }
+      return best;
+    }
+
+    /**
+     * Plays random moves until the game ends.
+     * @param player The player to move.
+     * @return The winning player, or 0 for a draw.
+     */
+    private int playout(int player) {
+      while (true) {
+        final int cell = empties[nextInt(emptyCount)];
+        place(cell, player);
+        if (winsAt(cell, player)) {
+          return player;
+        } else if (emptyCount == 0) {
+          return 0;
+        }
+        player = 3 - player;
+      }
+    }
+
+    /**
+     * Fills a cell on the scratch board and removes it from the empty cells.
+     * @param cell   The cell to fill.
+     * @param player The player filling it.
+     */
+    private void place(int cell, int player) {
+      cells[cell] = (byte) player;
+      final int slot = slots[cell];
+      final int last = empties[--emptyCount];
+      empties[slot] = last;
+      slots[last] = slot;
+    }
+
+    /**
+     * Checks if the move at the cell completes a line of winLength cells.
+     * @param cell   The cell just filled.
+     * @param player The player who filled it.
+     * @return True if the move wins, false otherwise.
+     */
+    private boolean winsAt(int cell, int player) {
+      final int x = cell / size;
+      final int y = cell % size;
+      for (int d = 0; d < DIRECTIONS.length; d += 2) {
+        final int dx = DIRECTIONS[d];
+        final int dy = DIRECTIONS[d + 1];
+        if (1 + countRun(x, y, dx, dy, player) + countRun(x, y, -dx, -dy, player) >= winLength) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Counts the player's cells next to (x, y) in one direction.
+     * @param x      The x-position to start from.
+     * @param y      The y-position to start from.
+     * @param dx     The x-step of the direction.
+     * @param dy     The y-step of the direction.
+     * @param player The player to count.
+     * @return The number of consecutive cells, capped at winLength - 1.
+     */
+    private int countRun(int x, int y, int dx, int dy, int player) {
+      int count = 0;
+      int i = x + dx;
+      int j = y + dy;
+      while (count < winLength - 1 && i >= 0 && j >= 0 && i < size && j < size
+          && cells[i * size + j] == player) {
+        count++;
+        i += dx;
+        j += dy;
+      }
+      return count;
+    }
+
+    /**
+     * Draws a uniformly distributed int with xorshift64*.
+     * @param bound The exclusive upper bound, which must be positive.
+     * @return A number from 0 to bound - 1.
+     */
+    private int nextInt(int bound) {
+      seed ^= seed >>> 12;
+      seed ^= seed << 25;
+      seed ^= seed >>> 27;
+      final long random = (seed * 0x2545F4914F6CDD1DL) >>> 32;
+      return (int) ((random * bound) >>> 32);
+    }
+
+  }
+
+}
@@ -1,7 +1,5 @@
 package models;
 
-import com.google.gson.Gson;
-
 public class Message {
 
   private boolean moveValidity;
@@ -76,7 +74,7 @@ public class Message {
    * @return A JSON Message string.
    */
   public String toJson() {
-    return new Gson().toJson(this);
+    return JsonEncoder.encode(this);
   }
 
 }
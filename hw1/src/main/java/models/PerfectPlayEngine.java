@@ -0,0 +1,116 @@
+package models;
+
+import java.util.Arrays;
+
+/**
+ * An engine that plays classic 3x3 tic-tac-toe perfectly.
+ * Every reachable position is solved once when the class is loaded, so a move is a table lookup.
+ */
+public class PerfectPlayEngine implements Engine {
+
+  public static final String NAME = "perfect";
+
+  public static final PerfectPlayEngine INSTANCE = new PerfectPlayEngine();
+
+  // Mask of every cell on a classic board
+  private static final int FULL_MASK = 0x1FF;
+
+  // Marks positions that have not been solved yet
+  private static final byte UNSOLVED = Byte.MIN_VALUE;
+
+  // Value of each position for the player to move, indexed by bitboard
+  private static final byte[] VALUES = new byte[1 << 18];
+
+  // Best cell to play in each position, indexed by bitboard, or -1 if the game is over
+  private static final byte[] BEST_MOVES = new byte[1 << 18];
+
+  // Number of reachable positions, including finished games
+  private static int positionCount;
+
+  static {
+    Arrays.fill(VALUES, UNSOLVED);
+    solve(0, 0);
+  }
+
+  private PerfectPlayEngine() {
+  }
+
+  /**
+   * Gets the number of reachable positions in the table.
+   * @return The number of positions.
+   */
+  public static int getPositionCount() {
+    return positionCount;
+  }
+
+  /**
+   * Solves the given position and every position reachable from it with negamax.
+   * A win scores more the fewer moves it takes, and a loss scores less the sooner it comes.
+   * @param p1 Player 1's cells.
+   * @param p2 Player 2's cells.
+   * @return The value of the position for the player to move.
+   */
+  private static int solve(int p1, int p2) {
+    final int key = p1 | p2 << 9;
+    if (VALUES[key] != UNSOLVED) {
+      return VALUES[key];
+    }
+    positionCount++;
+
+    // Player 1 moves first, so it is player 1's turn when both have played as often
+    final boolean p1ToMove = Integer.bitCount(p1) == Integer.bitCount(p2);
+    final int mover = p1ToMove ? p1 : p2;
+    final int opponent = p1ToMove ? p2 : p1;
+    final int empty = ~(p1 | p2) & FULL_MASK;
+
+    int best = -1;
+    int bestValue;
+    if (GameBoard.isWinningMask(opponent)) {
+      // The previous move won
+      bestValue = -(Integer.bitCount(empty) + 1);
+    } else if (empty == 0) {
+      bestValue = 0;
+    } else {
+      bestValue = Integer.MIN_VALUE;
+      for (int cell = 0; cell < 9; cell++) {
+        final int bit = 1 << cell;
+        if ((empty & bit) == 0) {
+          continue;
+        }
+        final int value = p1ToMove ? -solve(p1 | bit, p2) : -solve(p1, p2 | bit);
+        if (value > bestValue) {
+          bestValue = value;
+          best = cell;
+        }
+      }
+    }
+    VALUES[key] = (byte) bestValue;
+    BEST_MOVES[key] = (byte) best;
+    return bestValue;
+  }
+
+  /**
+   * Gets the game-theoretic value of a position for the player to move.
+   * @param bitboard Player 1's cells in bits 0-8 and player 2's cells in bits 9-17.
+   * @return Positive if the player to move wins, negative if they lose, 0 for a draw.
+   */
+  public static int getValue(int bitboard) {
+    return VALUES[bitboard];
+  }
+
+  @Override
+  public String getName() {
+    return NAME;
+  }
+
+  @Override
+  public boolean supports(GameBoard board) {
+    return board.getSize() == 3 && board.getWinLength() == 3;
+  }
+
+  @Override
+  public int chooseMove(GameBoard board) {
+    return BEST_MOVES[board.getBitboard()];
+  }
+
+}
@@ -0,0 +1,126 @@
+package benchmark;
+
+import controllers.Database;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the latency of persisting a move, with the prepared statements used by Database
+ * against the string-built SQL it used before.
+ * Run with: mvn test-compile, then java -cp target/test-classes:target/classes:(test classpath)
+ * benchmark.DatabaseBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DatabaseBenchmark {
+
+  // Scratch database file, so the benchmark never touches the server's games
+  private Path file;
+
+  private Database database;
+
+  private Connection connection;
+
+  private GameBoard board;
+
+  /**
+   * Opens a scratch database and plays a few moves on the board to persist.
+   * @throws Exception An exception thrown when the database or board cannot be set up.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    file = Files.createTempFile("tictactoe-benchmark", ".db");
+    database = new Database(file.toString());
+    connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+    board = new GameBoard('X');
+    board.joinGame();
+    board.playTurn(board.getP1(), 1, 1);
+    board.playTurn(board.getP2(), 0, 0);
+  }
+
+  /**
+   * Closes the connections and deletes the scratch database.
+   * @throws SQLException An exception thrown when a connection cannot be closed.
+   * @throws IOException  An exception thrown when the database file cannot be deleted.
+   */
+  @TearDown
+  public void tearDown() throws SQLException, IOException {
+    database.close();
+    connection.close();
+    Files.deleteIfExists(file);
+    Files.deleteIfExists(Path.of(file + "-wal"));
+    Files.deleteIfExists(Path.of(file + "-shm"));
+  }
+
+  @Benchmark
+  public void setPrepared() throws SQLException {
+    database.set(board);
+  }
+
+  @Benchmark
+  public void setConcatenated() throws SQLException {
+    Statement statement = connection.createStatement();
+    
+    // Convert gameboard state into a string
+    StringBuilder boardStateBuilder = new StringBuilder();
+    for (char[] row : board.getBoardState()) {
+      for (char val : row) {
+        boardStateBuilder.append(val == 0 ? '-' : val);
+      }
+    }
+    String boardState = boardStateBuilder.toString();
+    
+    String sql = "REPLACE INTO GAMES ("
+        + "GAME_ID, P1_ID, P1_TYPE, P2_ID, P2_TYPE, GAME_STARTED, TURN, WINNER, BOARD_STATE, "
+        + "IS_DRAW, BOARD_SIZE, WIN_LENGTH, ENGINE, SNAPSHOT_SEQ, STATUS, UPDATED_AT)\nVALUES ("
+        + "'0', "
+        + Integer.toString(board.getP1().getId()) + ", "
+        + "'" + board.getP1().getType() + "', "
+        + Integer.toString(board.getP2().getId()) + ", "
+        + "'" + board.getP2().getType() + "', "
+        + Integer.toString(board.isGameStarted() ? 1 : 0) + ", "
+        + Integer.toString(board.getTurn()) + ", "
+        + Integer.toString(board.getWinner()) + ", "
+        + "'" + boardState + "', "
+        + Integer.toString(board.isDraw() ? 1 : 0) + ", "
+        + Integer.toString(board.getSize()) + ", "
+        + Integer.toString(board.getWinLength()) + ", NULL, "
+        + Integer.toString(board.getMoveCount()) + ", "
+        + "'" + Database.statusOf(board) + "', "
+        + Long.toString(System.currentTimeMillis()) + ");";
+    statement.executeUpdate(sql);
+    
+    // Clean up
+    statement.close();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(DatabaseBenchmark.class.getSimpleName()).build()).run();
+  }
+
+}
@@ -0,0 +1,67 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import models.JsonEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the latency of encoding a gameboard, with the hand-written JsonEncoder against
+ * reflective Gson, which GameBoard.toJson used before.
+ * Run with: mvn test-compile, then java -cp target/test-classes:target/classes:(test classpath)
+ * benchmark.JsonEncoderBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class JsonEncoderBenchmark {
+
+  private final Gson gson = new Gson();
+
+  private GameBoard board;
+
+  /**
+   * Plays a few moves on the board to encode.
+   * @throws Exception An exception thrown when the board cannot be set up.
+   */
+  @Setup
+  public void setUp() throws Exception {
+    board = new GameBoard('X');
+    board.joinGame();
+    board.playTurn(board.getP1(), 1, 1);
+    board.playTurn(board.getP2(), 0, 0);
+    board.playTurn(board.getP1(), 2, 0);
+  }
+
+  @Benchmark
+  public String encodeHandWritten() {
+    return JsonEncoder.encode(board);
+  }
+
+  @Benchmark
+  public String encodeGson() {
+    return gson.toJson(board);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(JsonEncoderBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+
+}
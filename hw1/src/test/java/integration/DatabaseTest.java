@@ -1,7 +1,23 @@
 package integration;
 
 import controllers.Database;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import models.GameBoard;
+import models.PerfectPlayEngine;
+import models.Player;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.MethodOrderer;
@@ -11,6 +27,10 @@ import org.junit.jupiter.api.TestMethodOrder;
 
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class DatabaseTest {
+
+  // Moves of a 3x3 game that ends in a draw, starting with X
+  private static final int[][] DRAWN_GAME = {
+      {0, 0}, {1, 1}, {2, 2}, {0, 2}, {2, 0}, {1, 0}, {1, 2}, {2, 1}, {0, 1}};
   
   @Test
   @Order(1)
@@ -170,4 +190,351 @@ public class DatabaseTest {
     System.out.println("[Order 4] Tested Database set, then unset, then get");
   }
   
+  @Test
+  @Order(5)
+  public void testSetThenGet_LargeBoard() {
+    GameBoard gameboard;
+    GameBoard gameboardResult;
+    Database db;
+    
+    try {
+      gameboard = new GameBoard('O', 15, 5);
+      gameboard.joinGame();
+      gameboard.playTurn(gameboard.getP1(), 7, 7);
+      gameboard.playTurn(gameboard.getP2(), 14, 0);
+    } catch (Exception e) {
+      Assertions.fail("Constructing GameBoard should not fail");
+      return;
+    }
+    
+    try {
+      db = new Database();
+    } catch (Exception e) {
+      Assertions.fail("Constructing Database should not fail");
+      return;
+    }
+    
+    try {
+      db.set(gameboard);
+    } catch (Exception e) {
+      Assertions.fail("Setting into Database should not fail");
+      return;
+    }
+    
+    try {
+      gameboardResult = db.get();
+    } catch (Exception e) {
+      Assertions.fail("Getting from Database should not fail");
+      return;
+    }
+
+    Assertions.assertEquals(15, gameboardResult.getSize());
+    Assertions.assertEquals(5, gameboardResult.getWinLength());
+    Assertions.assertEquals(gameboard.getTurn(), gameboardResult.getTurn());
+    Assertions.assertArrayEquals(gameboard.getBoardState(), gameboardResult.getBoardState());
+
+    System.out.println("[Order 5] Tested Database set, then get (Large Board)");
+  }
+  
+  @Test
+  @Order(6)
+  public void testRecordMovesThenGet_ReplaysLog() throws Exception {
+    final Database db = new Database();
+    final GameBoard gameboard = new GameBoard('X');
+    gameboard.joinGame();
+    db.set(gameboard);
+
+    // Log two moves without reaching a snapshot
+    gameboard.playTurn(gameboard.getP1(), 1, 1);
+    db.recordMoves(gameboard, 0);
+    gameboard.playTurn(gameboard.getP2(), 0, 2);
+    db.recordMoves(gameboard, 1);
+
+    final GameBoard gameboardResult = db.get();
+    Assertions.assertEquals(2, gameboardResult.getMoveCount());
+    Assertions.assertEquals(1, gameboardResult.getTurn());
+    Assertions.assertArrayEquals(gameboard.getBoardState(), gameboardResult.getBoardState());
+
+    db.close();
+    System.out.println("[Order 6] Tested Database record moves, then get");
+  }
+
+  @Test
+  @Order(7)
+  public void testRecordMovesThenGet_FinishedGame() throws Exception {
+    final Database db = new Database();
+    final GameBoard gameboard = new GameBoard('O');
+    gameboard.joinGame();
+    db.set(gameboard);
+
+    // Player 1 wins on the left column
+    final int[][] moves = {{0, 0}, {0, 1}, {1, 0}, {1, 1}, {2, 0}};
+    for (int i = 0; i < moves.length; i++) {
+      gameboard.playTurn(i % 2 == 0 ? gameboard.getP1() : gameboard.getP2(),
+          moves[i][0], moves[i][1]);
+      db.recordMoves(gameboard, i);
+    }
+
+    final GameBoard gameboardResult = db.get();
+    Assertions.assertEquals(1, gameboardResult.getWinner());
+    Assertions.assertArrayEquals(gameboard.getBoardState(), gameboardResult.getBoardState());
+
+    // A new game replaces the logged moves of the old one
+    db.set(new GameBoard('X'));
+    Assertions.assertEquals(0, db.get().getMoveCount());
+
+    db.close();
+    System.out.println("[Order 7] Tested Database record moves, then get (Finished Game)");
+  }
+
+  @Test
+  @Order(8)
+  public void testRecordMovesThenGet_EngineDoesNotReplay() throws Exception {
+    final Database db = new Database();
+    final GameBoard gameboard = new GameBoard('X');
+    gameboard.joinGame(PerfectPlayEngine.INSTANCE);
+    db.set(gameboard);
+
+    // The engine replies within the same turn, so both moves are logged together
+    gameboard.playTurn(gameboard.getP1(), 0, 0);
+    db.recordMoves(gameboard, 0);
+
+    final GameBoard gameboardResult = db.get();
+    Assertions.assertEquals(2, gameboardResult.getMoveCount());
+    Assertions.assertArrayEquals(gameboard.getBoardState(), gameboardResult.getBoardState());
+    Assertions.assertEquals(PerfectPlayEngine.INSTANCE, gameboardResult.getEngine());
+
+    db.unset();
+    db.close();
+    System.out.println("[Order 8] Tested Database record moves, then get (Engine)");
+  }
+  
+  @Test
+  @Order(9)
+  public void testSetThenGet_MultipleGames() throws Exception {
+    final Database db = new Database();
+    final GameBoard first = new GameBoard('X');
+    final GameBoard second = new GameBoard('O', 5, 4);
+    second.joinGame();
+    db.set("multi-1", first);
+    db.set("multi-2", second);
+
+    // Moves are logged against their own game only
+    second.playTurn(second.getP1(), 2, 2);
+    db.recordMoves("multi-2", second, 0);
+
+    Assertions.assertEquals(0, db.get("multi-1").getMoveCount());
+    Assertions.assertEquals('X', db.get("multi-1").getP1().getType());
+    Assertions.assertEquals(1, db.get("multi-2").getMoveCount());
+    Assertions.assertEquals(5, db.get("multi-2").getSize());
+
+    // Removing one game leaves the other
+    db.unset("multi-1");
+    Assertions.assertNull(db.get("multi-1"));
+    Assertions.assertNotNull(db.get("multi-2"));
+
+    db.unset("multi-2");
+    db.close();
+    System.out.println("[Order 9] Tested Database set, then get (Multiple Games)");
+  }
+
+  @Test
+  @Order(10)
+  public void testLoadActive() throws Exception {
+    final Database db = new Database();
+    final GameBoard open = new GameBoard('X');
+    final GameBoard playing = new GameBoard('X');
+    playing.joinGame();
+    final GameBoard finished = new GameBoard('O');
+    finished.joinGame();
+    db.set("active-open", open);
+    db.set("active-playing", playing);
+    db.set("active-finished", finished);
+
+    // Log moves on both started games, finishing one of them
+    playing.playTurn(playing.getP1(), 0, 0);
+    db.recordMoves("active-playing", playing, 0);
+    final int[][] moves = {{0, 0}, {0, 1}, {1, 0}, {1, 1}, {2, 0}};
+    for (int i = 0; i < moves.length; i++) {
+      finished.playTurn(i % 2 == 0 ? finished.getP1() : finished.getP2(),
+          moves[i][0], moves[i][1]);
+      db.recordMoves("active-finished", finished, i);
+    }
+
+    final Map<String, GameBoard> loaded = new HashMap<>();
+    db.loadActive(loaded::put);
+    Assertions.assertTrue(loaded.containsKey("active-open"));
+    Assertions.assertEquals(1, loaded.get("active-playing").getMoveCount());
+    Assertions.assertArrayEquals(playing.getBoardState(),
+        loaded.get("active-playing").getBoardState());
+    Assertions.assertFalse(loaded.containsKey("active-finished"));
+
+    // Finished games are still readable on their own
+    Assertions.assertEquals(1, db.get("active-finished").getWinner());
+
+    db.unset("active-open");
+    db.unset("active-playing");
+    db.unset("active-finished");
+    db.close();
+    System.out.println("[Order 10] Tested Database load active games");
+  }
+  
+  @Test
+  @Order(11)
+  public void testConcurrentSetAndGet() throws Exception {
+    final Path file = Files.createTempFile("tictactoe", ".db");
+    final Database db = new Database(file.toString());
+    final int threads = 8;
+    final int operations = 200;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+    final List<Future<Integer>> results = new ArrayList<>();
+
+    // One thread plays the same game over and over, a move per write
+    final int rounds = 40;
+    final Future<Integer> writer = executor.submit(() -> {
+      for (int round = 0; round < rounds; round++) {
+        final GameBoard gameboard = new GameBoard('X');
+        gameboard.joinGame();
+        db.set("contended", gameboard);
+        for (int i = 0; i < DRAWN_GAME.length; i++) {
+          final Player player = i % 2 == 0 ? gameboard.getP1() : gameboard.getP2();
+          gameboard.playTurn(player, DRAWN_GAME[i][0], DRAWN_GAME[i][1]);
+          db.recordMoves("contended", gameboard, i);
+        }
+      }
+      return rounds;
+    });
+
+    // The others poll it while it is written, over their own connections, and write and read
+    // back games of their own
+    final long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      final String gameId = "concurrent-" + t;
+      results.add(executor.submit(() -> {
+        final GameBoard gameboard = new GameBoard('X');
+        gameboard.joinGame();
+        int reads = 0;
+        for (int i = 0; i < operations; i++) {
+          db.set(gameId, gameboard);
+          if (db.get(gameId) != null) {
+            reads++;
+          }
+          final GameBoard polled = db.get("contended");
+          if (polled != null) {
+            assertConsistent(polled);
+          }
+        }
+        return reads;
+      }));
+    }
+    for (Future<Integer> result : results) {
+      Assertions.assertEquals(operations, result.get(60, TimeUnit.SECONDS));
+    }
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    Assertions.assertEquals(rounds, writer.get(60, TimeUnit.SECONDS));
+    executor.shutdown();
+
+    Assertions.assertTrue(db.getConnectionCount() >= threads);
+    Assertions.assertTrue(db.get("contended").isDraw());
+    db.close();
+    Files.delete(file);
+    System.out.println("[Order 11] Tested Database concurrent set and get: "
+        + Math.round(2 * threads * operations / seconds) + " ops/sec");
+  }
+
+  /**
+   * Asserts that a gameboard read while its game was being played is one the game passed
+   * through: its moves fill its cells, the players took turns, and the turn is the next one.
+   * @param gameboard The gameboard read.
+   */
+  private static void assertConsistent(GameBoard gameboard) {
+    int xs = 0;
+    int os = 0;
+    for (char[] row : gameboard.getBoardState()) {
+      for (char cell : row) {
+        if (cell == 'X') {
+          xs++;
+        } else if (cell == 'O') {
+          os++;
+        }
+      }
+    }
+    Assertions.assertEquals(xs + os, gameboard.getMoveCount());
+    Assertions.assertTrue(xs == os || xs == os + 1);
+    if (!gameboard.isGameOver()) {
+      Assertions.assertEquals(xs == os ? 1 : 2, gameboard.getTurn());
+    }
+  }
+  
+  @Test
+  @Order(12)
+  public void testGet_TextBoardRow() throws Exception {
+    final Database db = new Database();
+
+    // A row written before boards were packed keeps its board as text
+    try (Connection connection = DriverManager.getConnection("jdbc:sqlite:tictactoe.db");
+        Statement statement = connection.createStatement()) {
+      statement.executeUpdate("REPLACE INTO GAMES (GAME_ID, P1_ID, P1_TYPE, P2_ID, P2_TYPE, "
+          + "GAME_STARTED, TURN, WINNER, BOARD_STATE, IS_DRAW, BOARD_SIZE, WIN_LENGTH, ENGINE, "
+          + "SNAPSHOT_SEQ, STATUS, UPDATED_AT) VALUES ('text-board', 1, 'X', 2, 'O', 1, 1, 0, "
+          + "'X---O----', 0, 3, 3, NULL, 2, 'in_progress', 0);");
+    }
+
+    final GameBoard gameboard = db.get("text-board");
+    Assertions.assertEquals('X', gameboard.getBoardState()[0][0]);
+    Assertions.assertEquals('O', gameboard.getBoardState()[1][1]);
+    Assertions.assertEquals(0, gameboard.getBoardState()[2][2]);
+
+    // Writing the game again packs its board
+    db.set("text-board", gameboard);
+    Assertions.assertArrayEquals(gameboard.getBoardState(),
+        db.get("text-board").getBoardState());
+
+    db.unset("text-board");
+    db.close();
+    System.out.println("[Order 12] Tested Database get (Text Board Row)");
+  }
+
+  @Test
+  @Order(13)
+  public void testArchiveThenGet() throws Exception {
+    final Database db = new Database();
+    final GameBoard finished = new GameBoard('X');
+    finished.joinGame();
+    db.set("archived", finished);
+    final int[][] moves = {{0, 0}, {1, 0}, {0, 1}, {1, 1}, {0, 2}};
+    for (int i = 0; i < moves.length; i++) {
+      finished.playTurn(i % 2 == 0 ? finished.getP1() : finished.getP2(),
+          moves[i][0], moves[i][1]);
+    }
+    db.recordMoves("archived", finished, 0);
+    final GameBoard playing = new GameBoard('O');
+    playing.joinGame();
+    db.set("not-archived", playing);
+
+    // Only the finished game moves to the archive
+    db.archive("archived");
+    db.archive("not-archived");
+    try (Connection connection = DriverManager.getConnection("jdbc:sqlite:tictactoe.db");
+        Statement statement = connection.createStatement();
+        ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM GAMES "
+            + "WHERE GAME_ID IN ('archived', 'not-archived');")) {
+      Assertions.assertEquals(1, rs.getInt(1));
+    }
+
+    // The archived game is still readable
+    final GameBoard result = db.get("archived");
+    Assertions.assertEquals(1, result.getWinner());
+    Assertions.assertEquals(5, result.getMoveCount());
+    Assertions.assertArrayEquals(finished.getBoardState(), result.getBoardState());
+    Assertions.assertNotNull(db.get("not-archived"));
+
+    // Removing the game removes its archived copy
+    db.unset("archived");
+    db.unset("not-archived");
+    Assertions.assertNull(db.get("archived"));
+    db.close();
+    System.out.println("[Order 13] Tested Database archive, then get");
+  }
+  
 }
@@ -0,0 +1,120 @@
+package integration;
+
+import controllers.Database;
+import controllers.GameDump;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import models.GameBoard;
+import models.PerfectPlayEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GameDumpTest {
+
+  @Test
+  public void testExportThenImport() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-dump");
+    final Database source = new Database(directory.resolve("source.db").toString());
+
+    // An open game, a game against an engine, and a finished game in the archive
+    source.set("dump-open", new GameBoard('O', 5, 4));
+    final GameBoard engineGame = new GameBoard('X');
+    engineGame.joinGame(PerfectPlayEngine.INSTANCE);
+    engineGame.playTurn(engineGame.getP1(), 0, 0);
+    source.set("dump-engine", engineGame);
+    final GameBoard finished = new GameBoard('X');
+    finished.joinGame();
+    final int[][] moves = {{0, 0}, {1, 0}, {0, 1}, {1, 1}, {0, 2}};
+    for (int i = 0; i < moves.length; i++) {
+      finished.playTurn(i % 2 == 0 ? finished.getP1() : finished.getP2(),
+          moves[i][0], moves[i][1]);
+    }
+    source.set("dump-finished", finished);
+    source.archive("dump-finished");
+
+    final StringWriter out = new StringWriter();
+    Assertions.assertEquals(3, GameDump.exportGames(source, out));
+    Assertions.assertEquals(3, out.toString().split("\n").length);
+    source.close();
+
+    final Database target = new Database(directory.resolve("target.db").toString());
+    Assertions.assertEquals(3, GameDump.importGames(target, new StringReader(out.toString())));
+
+    Assertions.assertEquals(5, target.get("dump-open").getSize());
+    Assertions.assertEquals(4, target.get("dump-open").getWinLength());
+    final GameBoard engineResult = target.get("dump-engine");
+    Assertions.assertEquals("perfect", engineResult.getEngine().getName());
+    Assertions.assertEquals(2, engineResult.getMoveCount());
+    Assertions.assertArrayEquals(engineGame.getBoardState(), engineResult.getBoardState());
+    final GameBoard finishedResult = target.get("dump-finished");
+    Assertions.assertEquals(1, finishedResult.getWinner());
+    Assertions.assertArrayEquals(finished.getBoardState(), finishedResult.getBoardState());
+    target.close();
+  }
+
+  @Test
+  public void testImportedGameCanBePlayed() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-dump");
+    final Database target = new Database(directory.resolve("target.db").toString());
+
+    // A game dumped by hand from an older server, without a win length
+    final String line = "{\"gameId\":\"dump-old\",\"board\":{"
+        + "\"p1\":{\"type\":\"X\",\"id\":1},\"p2\":{\"type\":\"O\",\"id\":2},"
+        + "\"gameStarted\":true,\"turn\":1,\"boardState\":[[\"X\",\"\\u0000\","
+        + "\"\\u0000\"],[\"\\u0000\",\"O\",\"\\u0000\"],"
+        + "[\"\\u0000\",\"\\u0000\",\"\\u0000\"]],\"winner\":0,\"isDraw\":false}}\n";
+    Assertions.assertEquals(1, GameDump.importGames(target, new StringReader(line)));
+
+    // Play on the imported game and log the move as the server would
+    final GameBoard board = target.get("dump-old");
+    Assertions.assertEquals(2, board.getMoveCount());
+    board.playTurn(board.getP1(), 0, 1);
+    target.recordMoves("dump-old", board, 2);
+    final GameBoard result = target.get("dump-old");
+    Assertions.assertEquals(3, result.getMoveCount());
+    Assertions.assertEquals(3, result.getWinLength());
+    Assertions.assertEquals(0, result.getWinner());
+    Assertions.assertEquals(2, result.getTurn());
+    target.close();
+  }
+
+  @Test
+  public void testImportKeepsLastLineOfGame() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-dump");
+    final Database source = new Database(directory.resolve("source.db").toString());
+
+    // The same game dumped twice, before and after a move
+    final GameBoard board = new GameBoard('X');
+    board.joinGame();
+    source.set("dump-twice", board);
+    final StringWriter out = new StringWriter();
+    GameDump.exportGames(source, out);
+    board.playTurn(board.getP1(), 1, 1);
+    source.set("dump-twice", board);
+    GameDump.exportGames(source, out);
+    source.close();
+
+    // Both lines are read into one batch, which writes the game as the later line has it
+    final Database target = new Database(directory.resolve("target.db").toString());
+    Assertions.assertEquals(2, GameDump.importGames(target, new StringReader(out.toString())));
+    final GameBoard result = target.get("dump-twice");
+    Assertions.assertEquals(1, result.getMoveCount());
+    Assertions.assertEquals('X', result.getBoardState()[1][1]);
+    target.close();
+  }
+
+  @Test
+  public void testImportInvalidLine() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-dump");
+    final Database target = new Database(directory.resolve("target.db").toString());
+
+    final IOException thrown = Assertions.assertThrows(IOException.class,
+        () -> GameDump.importGames(target, new StringReader("\n{\"gameId\":")));
+    Assertions.assertEquals("Invalid game on line 2", thrown.getMessage());
+    target.close();
+  }
+
+}
@@ -0,0 +1,138 @@
+package integration;
+
+import controllers.Database;
+import controllers.FileJournalGameStore;
+import controllers.GameStore;
+import controllers.InMemoryGameStore;
+import controllers.MappedJournalGameStore;
+import controllers.ShardedGameStore;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import models.GameBoard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GameStoreTest {
+
+  /**
+   * Checks the behavior every store shares.
+   * @param store The store, which must not hold the games used here.
+   * @throws Exception An exception thrown by the store.
+   */
+  private void testContract(GameStore store) throws Exception {
+    final GameBoard open = new GameBoard('X');
+    final GameBoard playing = new GameBoard('O', 4, 3);
+    playing.joinGame();
+    store.set("store-open", open);
+    store.set("store-playing", playing);
+
+    // Log moves, enough to cross a snapshot and finish the game
+    final int[][] moves = {{0, 0}, {1, 0}, {0, 1}, {1, 1}, {0, 2}};
+    for (int i = 0; i < moves.length; i++) {
+      final int fromSeq = playing.getMoveCount();
+      playing.playTurn(i % 2 == 0 ? playing.getP1() : playing.getP2(), moves[i][0], moves[i][1]);
+      store.recordMoves("store-playing", playing, fromSeq);
+    }
+
+    final GameBoard result = store.get("store-playing");
+    Assertions.assertEquals(5, result.getMoveCount());
+    Assertions.assertEquals(1, result.getWinner());
+    Assertions.assertEquals(4, result.getSize());
+    Assertions.assertArrayEquals(playing.getBoardState(), result.getBoardState());
+
+    // Only the open game is still active
+    final Map<String, GameBoard> loaded = new HashMap<>();
+    store.loadActive(loaded::put);
+    Assertions.assertTrue(loaded.containsKey("store-open"));
+    Assertions.assertFalse(loaded.containsKey("store-playing"));
+
+    // Writes in one transaction commit together
+    store.inTransaction(() -> {
+      store.unset("store-open");
+      store.unset("store-playing");
+    });
+    Assertions.assertNull(store.get("store-open"));
+    Assertions.assertNull(store.get("store-playing"));
+  }
+
+  @Test
+  public void testDatabaseContract() throws Exception {
+    final Database db = new Database();
+    testContract(db);
+    db.close();
+  }
+
+  @Test
+  public void testShardedContract() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-shards");
+    final ShardedGameStore store = new ShardedGameStore(directory.toString(), 3);
+    testContract(store);
+    store.close();
+  }
+
+  @Test
+  public void testInMemoryContract() throws Exception {
+    final InMemoryGameStore store = new InMemoryGameStore();
+    testContract(store);
+    Assertions.assertEquals(0, store.size());
+    store.close();
+  }
+
+  @Test
+  public void testFileJournalContract() throws Exception {
+    final Path journal = Files.createTempFile("tictactoe", ".journal");
+    final FileJournalGameStore store = new FileJournalGameStore(journal.toString());
+    testContract(store);
+    store.close();
+    Files.delete(journal);
+  }
+
+  @Test
+  public void testMappedJournalContract() throws Exception {
+    final Path journal = Files.createTempDirectory("tictactoe-journal");
+    final MappedJournalGameStore store = new MappedJournalGameStore(journal.toString(), 4096);
+    testContract(store);
+    store.close();
+  }
+
+  @Test
+  public void testFileJournalReplaysOnOpen() throws Exception {
+    final Path journal = Files.createTempFile("tictactoe", ".journal");
+    FileJournalGameStore store = new FileJournalGameStore(journal.toString());
+    final GameBoard board = new GameBoard('X');
+    board.joinGame();
+    store.set("0", board);
+    board.playTurn(board.getP1(), 1, 1);
+    store.recordMoves(board, 0);
+    store.close();
+
+    // Writes keep the journal's line format
+    final List<String> lines = Files.readAllLines(journal, StandardCharsets.UTF_8);
+    Assertions.assertTrue(lines.get(0).startsWith("{\"op\":\"set\""));
+    Assertions.assertTrue(lines.get(1).startsWith("{\"op\":\"moves\""));
+
+    // A crash leaves half of a write at the end of the journal
+    Files.write(journal, "{\"op\":\"se".getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.APPEND);
+
+    store = new FileJournalGameStore(journal.toString());
+    final GameBoard result = store.get();
+    Assertions.assertEquals(1, result.getMoveCount());
+    Assertions.assertEquals('X', result.getBoardState()[1][1]);
+
+    // The torn write is dropped, so later writes replay too
+    result.playTurn(result.getP2(), 0, 0);
+    store.recordMoves(result, 1);
+    store.close();
+    store = new FileJournalGameStore(journal.toString());
+    Assertions.assertEquals(2, store.get().getMoveCount());
+    store.close();
+    Files.delete(journal);
+  }
+
+}
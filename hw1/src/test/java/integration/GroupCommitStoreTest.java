@@ -0,0 +1,84 @@
+package integration;
+
+import controllers.Database;
+import controllers.GroupCommitStore;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GroupCommitStoreTest {
+
+  @Test
+  public void testConcurrentWritesShareCommits() throws Exception {
+    final Database db = new Database();
+    final GroupCommitStore store = new GroupCommitStore(db, 5, 256);
+    final int threads = 8;
+    final int writes = 50;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<?>> results = new ArrayList<>();
+
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      results.add(executor.submit(() -> {
+        for (int i = 0; i < writes; i++) {
+          store.set("group-" + thread + "-" + i, new GameBoard('X'));
+        }
+        return null;
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    executor.shutdown();
+
+    // Every write is committed, in fewer transactions than writes
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < writes; i++) {
+        Assertions.assertNotNull(db.get("group-" + t + "-" + i));
+        db.unset("group-" + t + "-" + i);
+      }
+    }
+    Assertions.assertTrue(store.getCommitCount() < threads * writes);
+    Assertions.assertTrue(store.getWritesPerCommit() > 1);
+    store.close();
+    db.close();
+  }
+
+  @Test
+  public void testFailingWriteDoesNotFailOthers() throws Exception {
+    final Database db = new Database();
+    final GroupCommitStore store = new GroupCommitStore(db, 5, 256);
+
+    final SQLException thrown = Assertions.assertThrows(SQLException.class,
+        () -> store.inTransaction(() -> {
+          throw new SQLException("Failing write");
+        }));
+    Assertions.assertEquals("Failing write", thrown.getMessage());
+
+    store.set("group-after-failure", new GameBoard('O'));
+    Assertions.assertEquals('O', db.get("group-after-failure").getP1().getType());
+    db.unset("group-after-failure");
+    store.close();
+    db.close();
+  }
+
+  @Test
+  public void testWriteAfterClose() throws Exception {
+    final Database db = new Database();
+    final GroupCommitStore store = new GroupCommitStore(db, 5, 256);
+    store.close();
+
+    Assertions.assertThrows(SQLException.class,
+        () -> store.set("group-closed", new GameBoard('X')));
+    Assertions.assertNull(db.get("group-closed"));
+    db.close();
+  }
+
+}
@@ -0,0 +1,193 @@
+package integration;
+
+import controllers.MappedJournalGameStore;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import models.GameBoard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MappedJournalGameStoreTest {
+
+  // Small segments, so a few games fill several of them
+  private static final int SEGMENT_SIZE = 4096;
+
+  // Cells of a 19x19 board for each player, in a pattern with no three in a row
+  private static final int[][] CELLS = new int[2][181];
+
+  static {
+    final int[] counts = new int[2];
+    for (int cell = 0; cell < 19 * 19; cell++) {
+      final int owner = (cell / 19 / 2 + cell % 19) % 2;
+      CELLS[owner][counts[owner]++] = cell;
+    }
+  }
+
+  /**
+   * Plays the given number of moves on a fresh 19x19 game, logging each one.
+   * @param store  The store.
+   * @param gameId The ID of the game.
+   * @param moves  The number of moves to play.
+   * @return The gameboard.
+   * @throws Exception An exception thrown by the store or the gameboard.
+   */
+  private GameBoard playGame(MappedJournalGameStore store, String gameId, int moves)
+      throws Exception {
+    final GameBoard board = new GameBoard('X', 19, 5);
+    board.joinGame();
+    store.set(gameId, board);
+    for (int i = 0; i < moves; i++) {
+      final int cell = CELLS[i % 2][i / 2];
+      board.playTurn(i % 2 == 0 ? board.getP1() : board.getP2(), cell / 19, cell % 19);
+      store.recordMoves(gameId, board, i);
+    }
+    return board;
+  }
+
+  /**
+   * Lists the segment files of a journal.
+   * @param directory The journal directory.
+   * @return The segment files, in order.
+   * @throws IOException An exception thrown when the directory cannot be read.
+   */
+  private List<Path> segments(Path directory) throws IOException {
+    try (Stream<Path> paths = Files.list(directory)) {
+      final List<Path> segments = new ArrayList<>();
+      paths.sorted().forEach(segments::add);
+      return segments;
+    }
+  }
+
+  @Test
+  public void testRollOverThenReplay() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-journal");
+    MappedJournalGameStore store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    final GameBoard board = playGame(store, "rollover", 120);
+    Assertions.assertTrue(store.getSegmentCount() > 1);
+    store.close();
+
+    store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    final GameBoard result = store.get("rollover");
+    Assertions.assertEquals(120, result.getMoveCount());
+    Assertions.assertArrayEquals(board.getBoardState(), result.getBoardState());
+    store.close();
+  }
+
+  @Test
+  public void testCorruptRecordEndsReplay() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-journal");
+    MappedJournalGameStore store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    playGame(store, "corrupt", 3);
+    store.close();
+
+    // Flip a byte in the body of the last move, so its CRC no longer matches
+    final Path segment = segments(directory).get(0);
+    try (RandomAccessFile file = new RandomAccessFile(segment.toFile(), "rw")) {
+      long end = 0;
+      long position = 0;
+      while (true) {
+        file.seek(position);
+        final int length = file.readInt();
+        if (length == 0) {
+          break;
+        }
+        end = position;
+        position += 8 + length;
+      }
+      file.seek(end + 8 + 1);
+      final int value = file.read();
+      file.seek(end + 8 + 1);
+      file.write(value ^ 0xFF);
+    }
+
+    store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    Assertions.assertEquals(2, store.get("corrupt").getMoveCount());
+
+    // Appending resumes where the valid records end
+    final GameBoard board = store.get("corrupt");
+    board.playTurn(board.getP1(), 10, 10);
+    store.recordMoves("corrupt", board, 2);
+    store.close();
+    store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    Assertions.assertEquals('X', store.get("corrupt").getBoardState()[10][10]);
+    store.close();
+  }
+
+  @Test
+  public void testCompactionDropsOldSegments() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-journal");
+    MappedJournalGameStore store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    final GameBoard board = playGame(store, "compacted", 300);
+    store.unset("compacted-removed");
+    final GameBoard finished = new GameBoard('X');
+    finished.joinGame();
+    store.set("compacted-finished", finished);
+    for (int i = 0; i < 5; i++) {
+      finished.playTurn(i % 2 == 0 ? finished.getP1() : finished.getP2(), i % 2, i / 2);
+      store.recordMoves("compacted-finished", finished, i);
+    }
+    Assertions.assertEquals(1, finished.getWinner());
+
+    // The moves and snapshots fill more than four segments, which compacts the journal
+    Assertions.assertTrue(segments(directory).size() <= 4);
+    store.compact();
+    Assertions.assertEquals(1, store.getSegmentCount());
+    Assertions.assertEquals(1, segments(directory).size());
+
+    // Finished games are dropped along with the old segments
+    Assertions.assertNull(store.get("compacted-finished"));
+    store.close();
+
+    store = new MappedJournalGameStore(directory.toString(), SEGMENT_SIZE);
+    final GameBoard result = store.get("compacted");
+    Assertions.assertEquals(300, result.getMoveCount());
+    Assertions.assertArrayEquals(board.getBoardState(), result.getBoardState());
+    Assertions.assertNull(store.get("compacted-finished"));
+    store.close();
+  }
+
+  @Test
+  public void testConcurrentMovesShareSyncs() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-journal");
+    final MappedJournalGameStore store =
+        new MappedJournalGameStore(directory.toString(), 1 << 20);
+    final int threads = 8;
+    final int games = 25;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<?>> results = new ArrayList<>();
+
+    final long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      results.add(executor.submit(() -> {
+        for (int g = 0; g < games; g++) {
+          playGame(store, "concurrent-" + thread + "-" + g, 200);
+        }
+        return null;
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    executor.shutdown();
+
+    // Every move committed, with at most one sync per transaction
+    final int moves = threads * games * 200;
+    Assertions.assertEquals(200, store.get("concurrent-0-0").getMoveCount());
+    Assertions.assertTrue(store.getSyncCount() <= moves + threads * games);
+    store.close();
+    System.out.println("Tested mapped journal concurrent moves: "
+        + Math.round(moves / seconds) + " moves/sec in " + store.getSyncCount() + " syncs");
+  }
+
+}
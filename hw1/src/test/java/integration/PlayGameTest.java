@@ -2,10 +2,19 @@ package integration;
 
 import com.google.gson.Gson;
 import controllers.PlayGame;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import kong.unirest.HttpResponse;
 import kong.unirest.Unirest;
 import models.GameBoard;
+import models.MctsEngine;
 import models.Message;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.client.WebSocketClient;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeAll;
@@ -972,6 +981,426 @@ public class PlayGameTest {
     System.out.println("[Order 29] Tested Database (Crash, No Restore: Database Null)");
   }
 
+  @Test
+  @Order(30)
+  public void testMultipleGames_Independent() {
+    // Start two games side by side
+    Unirest.get("http://localhost:8080/game/a/newgame").asString();
+    Unirest.get("http://localhost:8080/game/b/newgame").asString();
+    Unirest.post("http://localhost:8080/game/a/startgame").body("type=X").asString();
+    Unirest.post("http://localhost:8080/game/b/startgame").body("type=O").asString();
+    Unirest.get("http://localhost:8080/game/a/joingame").asString();
+    Unirest.get("http://localhost:8080/game/b/joingame").asString();
+
+    // Fill the middle tile in game A only
+    Unirest.post("http://localhost:8080/game/a/move/1").body("x=1&y=1").asString();
+
+    // Make the same move in game B
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/b/move/1").body("x=1&y=1").asString();
+    int resStatus = response.getStatus();
+    String resBody = response.getBody();
+
+    // Assert the server responds with 200 OK
+    Assertions.assertEquals(200, resStatus);
+
+    // Parse the response
+    Message message = new Gson().fromJson(resBody, Message.class);
+
+    // Ensure that game B did not see the move made in game A
+    Assertions.assertEquals(true, message.isMoveValid());
+    Assertions.assertEquals(100, message.getCode());
+
+    // Ensure the default game is untouched
+    response = Unirest.post("http://localhost:8080/move/1").body("x=1&y=1").asString();
+    Assertions.assertEquals("Board not initialized", response.getBody());
+
+    System.out.println("[Order 30] Tested /game/:gameId Independent Games");
+  }
+
+  @Test
+  @Order(31)
+  public void testStartGameSuccess_LargeBoard() {
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/c/startgame")
+        .body("type=X&size=15&winLength=5").asString();
+    int resStatus = response.getStatus();
+    String resBody = response.getBody();
+
+    // Assert the server responds with 200 OK
+    Assertions.assertEquals(200, resStatus);
+
+    // Parse the response
+    GameBoard gameBoard = new Gson().fromJson(resBody, GameBoard.class);
+
+    Assertions.assertEquals(5, gameBoard.getWinLength());
+    Assertions.assertArrayEquals(new char[15][15], gameBoard.getBoardState());
+
+    System.out.println("[Order 31] Tested /startgame Success (Large Board)");
+  }
+
+  @Test
+  @Order(32)
+  public void testStartGameFailure_InvalidSize() {
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/c/startgame")
+        .body("type=X&size=4&winLength=5").asString();
+
+    // Assert the server responds with 500 Internal Server Error
+    Assertions.assertEquals(500, response.getStatus());
+    Assertions.assertEquals("Invalid win length", response.getBody());
+
+    response = Unirest.post("http://localhost:8080/game/c/startgame")
+        .body("type=X&size=99").asString();
+
+    // Assert the server responds with 500 Internal Server Error
+    Assertions.assertEquals(500, response.getStatus());
+    Assertions.assertEquals("Invalid size", response.getBody());
+
+    System.out.println("[Order 32] Tested /startgame Invalid Size");
+  }
+
+  @Test
+  @Order(33)
+  public void testMoveSuccess_PerfectOpponent() {
+    Unirest.get("http://localhost:8080/newgame").asString();
+
+    // Start a single-player game
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/startgame")
+        .body("type=X&opponent=perfect").asString();
+    GameBoard gameBoard = new Gson().fromJson(response.getBody(), GameBoard.class);
+    Assertions.assertEquals(true, gameBoard.isGameStarted());
+    Assertions.assertEquals('O', gameBoard.getP2().getType());
+
+    // Make a move as player 1
+    response = Unirest.post("http://localhost:8080/move/1").body("x=0&y=0").asString();
+    Message message = new Gson().fromJson(response.getBody(), Message.class);
+    Assertions.assertEquals(true, message.isMoveValid());
+
+    // Ensure the engine replied within the same request
+    try {
+      GameBoard snapshot = PlayGame.database.get();
+      Assertions.assertEquals(1, snapshot.getTurn());
+      Assertions.assertEquals('O', snapshot.getBoardState()[1][1]);
+      Assertions.assertEquals("perfect", snapshot.getEngine().getName());
+    } catch (Exception e) {
+      Assertions.fail("Getting from Database should not fail");
+    }
+
+    System.out.println("[Order 33] Tested /move Success (Perfect Opponent)");
+  }
+
+  @Test
+  @Order(34)
+  public void testStartGameFailure_InvalidOpponent() {
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/startgame")
+        .body("type=X&opponent=nobody").asString();
+
+    // Assert the server responds with 500 Internal Server Error
+    Assertions.assertEquals(500, response.getStatus());
+    Assertions.assertEquals("Invalid opponent", response.getBody());
+
+    System.out.println("[Order 34] Tested /startgame Invalid Opponent");
+  }
+
+  @Test
+  @Order(35)
+  public void testMetrics_StartupTimes() throws Exception {
+    // Leave a game in progress to be restored
+    Unirest.get("http://localhost:8080/game/restored/newgame").asString();
+    Unirest.post("http://localhost:8080/game/restored/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/restored/joingame").asString();
+    
+    // Restart the server, which serves requests while the games are restored
+    PlayGame.stop();
+    PlayGame.main(new String[0]);
+    
+    // Reset settings to allow for retries while the server loads up
+    Unirest.config().reset().automaticRetries(true);
+    
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/restored/move/1")
+        .body("x=1&y=1").asString();
+    Message message = new Gson().fromJson(response.getBody(), Message.class);
+    Assertions.assertEquals(true, message.isMoveValid());
+    
+    // Wait for the restore to finish
+    Map<?, ?> metrics = null;
+    for (int attempt = 0; attempt < 50; attempt++) {
+      response = Unirest.get("http://localhost:8080/metrics").asString();
+      metrics = new Gson().fromJson(response.getBody(), Map.class);
+      if (((Number) metrics.get("startup.restoreMillis")).longValue() >= 0) {
+        break;
+      }
+      Thread.sleep(100);
+    }
+    Assertions.assertTrue(((Number) metrics.get("startup.restoreMillis")).longValue() >= 0);
+    Assertions.assertTrue(((Number) metrics.get("startup.restoredGames")).longValue() >= 1);
+    Assertions.assertTrue(((Number) metrics.get("startup.firstRequestMillis")).longValue() >= 0);
+    
+    System.out.println("[Order 35] Tested /metrics Startup Times");
+  }
+
+  @Test
+  @Order(36)
+  public void testSweepGames_ArchivedGameStillReadable() {
+    // Finish a game
+    Unirest.get("http://localhost:8080/game/swept/newgame").asString();
+    Unirest.post("http://localhost:8080/game/swept/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/swept/joingame").asString();
+    final int[][] moves = {{0, 0}, {1, 0}, {0, 1}, {1, 1}, {0, 2}};
+    for (int i = 0; i < moves.length; i++) {
+      Unirest.post("http://localhost:8080/game/swept/move/" + (i % 2 + 1))
+          .body("x=" + moves[i][0] + "&y=" + moves[i][1]).asString();
+    }
+    
+    // Sweep finished games only
+    Assertions.assertTrue(PlayGame.sweepGames(Long.MAX_VALUE) >= 1);
+    
+    // The game loads from the archive, still over
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/swept/move/2")
+        .body("x=2&y=2").asString();
+    Message message = new Gson().fromJson(response.getBody(), Message.class);
+    Assertions.assertEquals(false, message.isMoveValid());
+    Assertions.assertEquals(101, message.getCode());
+    
+    System.out.println("[Order 36] Tested Sweep (Archived Game Still Readable)");
+  }
+  
+  @Test
+  @Order(37)
+  public void testSweepGames_IdleGameReloads() {
+    Unirest.get("http://localhost:8080/game/idle/newgame").asString();
+    Unirest.post("http://localhost:8080/game/idle/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/idle/joingame").asString();
+    Unirest.post("http://localhost:8080/game/idle/move/1").body("x=0&y=0").asString();
+    
+    // Sweep every game, as all of them count as idle
+    Assertions.assertTrue(PlayGame.sweepGames(0) >= 1);
+    
+    // The game reloads from the store and play continues
+    HttpResponse<String> response = Unirest.post("http://localhost:8080/game/idle/move/2")
+        .body("x=1&y=1").asString();
+    Message message = new Gson().fromJson(response.getBody(), Message.class);
+    Assertions.assertEquals(true, message.isMoveValid());
+    try {
+      Assertions.assertEquals(2, PlayGame.database.get("idle").getMoveCount());
+    } catch (Exception e) {
+      Assertions.fail("Getting from Database should not fail");
+    }
+    
+    System.out.println("[Order 37] Tested Sweep (Idle Game Reloads)");
+  }
+
+  @Test
+  @Order(38)
+  public void testMetrics_DelayedBroadcastCancelled() {
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/metrics").asString();
+    Map<?, ?> metrics = new Gson().fromJson(response.getBody(), Map.class);
+    final long cancelled = ((Number) metrics.get("broadcast.cancelled")).longValue();
+
+    // Joining schedules a broadcast, which a new game cancels before it is sent
+    Unirest.get("http://localhost:8080/game/cancelled/newgame").asString();
+    Unirest.post("http://localhost:8080/game/cancelled/startgame").body("type=X").asString();
+    Unirest.get("http://localhost:8080/game/cancelled/joingame").asString();
+    Unirest.get("http://localhost:8080/game/cancelled/newgame").asString();
+
+    response = Unirest.get("http://localhost:8080/metrics").asString();
+    metrics = new Gson().fromJson(response.getBody(), Map.class);
+    Assertions.assertEquals(cancelled + 1,
+        ((Number) metrics.get("broadcast.cancelled")).longValue());
+    Assertions.assertTrue(((Number) metrics.get("broadcast.queueDepth")).intValue() >= 0);
+
+    System.out.println("[Order 38] Tested /metrics Delayed Broadcast Cancelled");
+  }
+
+  @Test
+  @Order(39)
+  public void testRoomMetrics() {
+    Unirest.get("http://localhost:8080/game/room/newgame").asString();
+    Unirest.post("http://localhost:8080/game/room/startgame").body("type=X").asString();
+
+    HttpResponse<String> response = Unirest.get("http://localhost:8080/game/room/metrics")
+        .asString();
+    Assertions.assertEquals(200, response.getStatus());
+    Map<?, ?> metrics = new Gson().fromJson(response.getBody(), Map.class);
+
+    // No client is connected to the room
+    Assertions.assertEquals(0, ((Number) metrics.get("sessions")).intValue());
+    Assertions.assertEquals(0, ((Number) metrics.get("queueDepth")).intValue());
+    Assertions.assertEquals(0, ((Number) metrics.get("evictions")).intValue());
+
+    response = Unirest.get("http://localhost:8080/metrics").asString();
+    metrics = new Gson().fromJson(response.getBody(), Map.class);
+    Assertions.assertTrue(metrics.containsKey("broadcast.sessionQueueDepth"));
+    Assertions.assertTrue(metrics.containsKey("broadcast.evictions"));
+
+    System.out.println("[Order 39] Tested /game/:gameId/metrics");
+  }
+
+  @Test
+  @Order(40)
+  public void testSweepGames_WriteBehindArchive() {
+    // Restart the server with a write-behind queue, whose flushes lock each board
+    PlayGame.stop();
+    PlayGame.main(new String[] {"--write-behind"});
+    Unirest.config().reset().automaticRetries(true);
+    
+    Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      for (int round = 0; round < 5; round++) {
+        final String game = "http://localhost:8080/game/behind" + round;
+        Unirest.get(game + "/newgame").asString();
+        Unirest.post(game + "/startgame").body("type=X").asString();
+        Unirest.get(game + "/joingame").asString();
+        final int[][] moves = {{0, 0}, {1, 0}, {0, 1}, {1, 1}, {0, 2}};
+        for (int i = 0; i < moves.length; i++) {
+          Unirest.post(game + "/move/" + (i % 2 + 1))
+              .body("x=" + moves[i][0] + "&y=" + moves[i][1]).asString();
+        }
+        
+        // Sweep while the finished game's writes are still queued
+        Assertions.assertTrue(PlayGame.sweepGames(Long.MAX_VALUE) >= 1);
+        
+        HttpResponse<String> response = Unirest.post(game + "/move/2").body("x=2&y=2")
+            .asString();
+        Message message = new Gson().fromJson(response.getBody(), Message.class);
+        Assertions.assertEquals(101, message.getCode());
+      }
+    });
+    
+    System.out.println("[Order 40] Tested Sweep (Write-Behind Archive)");
+  }
+
+  @Test
+  @Order(41)
+  public void testCache_WithoutStore() {
+    // Restart the server with a bounded cache but no store to load evicted games from
+    PlayGame.stop();
+    PlayGame.main(new String[] {"--store=none", "--cache=1"});
+    Unirest.config().reset().automaticRetries(true);
+    
+    // The bound is ignored, so every game stays playable
+    for (int i = 0; i < 3; i++) {
+      final String game = "http://localhost:8080/game/uncached" + i;
+      Unirest.post(game + "/startgame").body("type=X").asString();
+      Unirest.get(game + "/joingame").asString();
+    }
+    for (int i = 0; i < 3; i++) {
+      HttpResponse<String> response = Unirest.post("http://localhost:8080/game/uncached" + i
+          + "/move/1").body("x=0&y=0").asString();
+      Message message = new Gson().fromJson(response.getBody(), Message.class);
+      Assertions.assertEquals(100, message.getCode());
+    }
+    
+    System.out.println("[Order 41] Tested Cache (Without Store)");
+  }
+
+  @Test
+  @Order(42)
+  public void testMoveSuccess_MctsOpponentRepliesLater() {
+    // Restart the server with a store to watch the engine's reply land in
+    PlayGame.stop();
+    PlayGame.main(new String[0]);
+    Unirest.config().reset().automaticRetries(true);
+    
+    final String game = "http://localhost:8080/game/mcts";
+    Unirest.get(game + "/newgame").asString();
+    HttpResponse<String> response = Unirest.post(game + "/startgame")
+        .body("type=X&size=7&winLength=4&opponent=mcts").asString();
+    Assertions.assertEquals(200, response.getStatus());
+    
+    // The move is answered without waiting for the engine's search
+    final long start = System.nanoTime();
+    response = Unirest.post(game + "/move/1").body("x=3&y=3").asString();
+    final long millis = (System.nanoTime() - start) / 1_000_000;
+    Message message = new Gson().fromJson(response.getBody(), Message.class);
+    Assertions.assertEquals(100, message.getCode());
+    Assertions.assertTrue(millis < MctsEngine.DEFAULT_BUDGET_MILLIS);
+    
+    // The engine's reply is played and stored once it is chosen
+    Assertions.assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+      GameBoard stored = PlayGame.database.get("mcts");
+      while (stored.getMoveCount() < 2) {
+        Thread.sleep(50);
+        stored = PlayGame.database.get("mcts");
+      }
+      Assertions.assertEquals(1, stored.getTurn());
+    });
+    
+    System.out.println("[Order 42] Tested /move Success (MCTS Opponent Replies Later)");
+  }
+
+  @Test
+  @Order(43)
+  public void testMoveFailure_PlayerTwoAgainstEngine() {
+    final String game = "http://localhost:8080/game/engineseat";
+    Unirest.post(game + "/startgame").body("type=X&opponent=perfect").asString();
+    Unirest.post(game + "/move/1").body("x=0&y=0").asString();
+    
+    // Player 2's seat belongs to the engine, so a person cannot move for it
+    HttpResponse<String> response = Unirest.post(game + "/move/2").body("x=2&y=2").asString();
+    Message message = new Gson().fromJson(response.getBody(), Message.class);
+    Assertions.assertEquals(false, message.isMoveValid());
+    Assertions.assertEquals(103, message.getCode());
+    try {
+      Assertions.assertEquals(2, PlayGame.database.get("engineseat").getMoveCount());
+    } catch (Exception e) {
+      Assertions.fail("Getting from Database should not fail");
+    }
+    
+    System.out.println("[Order 43] Tested /move Player 2 Against Engine");
+  }
+
+  /**
+   * Connects a web socket to a game's room, collecting the boards it is sent.
+   * @param client   The started web socket client.
+   * @param gameId   The ID of the game.
+   * @param received The queue that collects the boards' JSON.
+   * @throws Exception An exception thrown when the socket cannot connect.
+   */
+  private static void listen(final WebSocketClient client, final String gameId,
+      final BlockingQueue<String> received) throws Exception {
+    client.connect(new WebSocketAdapter() {
+      @Override
+      public void onWebSocketText(final String message) {
+        received.add(message);
+      }
+    }, URI.create("ws://localhost:8080/gameboard?gameId=" + gameId)).get(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  @Order(44)
+  public void testWebSocket_BoardsReachOnlyTheirRoom() throws Exception {
+    final WebSocketClient client = new WebSocketClient();
+    client.start();
+    try {
+      final BlockingQueue<String> roomA = new LinkedBlockingQueue<>();
+      final BlockingQueue<String> roomB = new LinkedBlockingQueue<>();
+      listen(client, "rooma", roomA);
+      listen(client, "roomb", roomB);
+      
+      // Each room is sent the board of its own game once player 2 joins
+      for (String gameId : new String[] {"rooma", "roomb"}) {
+        final String game = "http://localhost:8080/game/" + gameId;
+        Unirest.post(game + "/startgame").body("type=X").asString();
+        Unirest.get(game + "/joingame").asString();
+      }
+      Assertions.assertNotNull(roomA.poll(5, TimeUnit.SECONDS));
+      Assertions.assertNotNull(roomB.poll(5, TimeUnit.SECONDS));
+      
+      // A move is sent to the room of its game, and to no other
+      HttpResponse<String> response = Unirest.post("http://localhost:8080/game/rooma/move/1")
+          .body("x=0&y=0").asString();
+      Assertions.assertEquals(100, new Gson().fromJson(response.getBody(), Message.class)
+          .getCode());
+      final String board = roomA.poll(5, TimeUnit.SECONDS);
+      Assertions.assertNotNull(board);
+      Assertions.assertEquals('X', new Gson().fromJson(board, GameBoard.class)
+          .getBoardState()[0][0]);
+      Assertions.assertNull(roomB.poll(500, TimeUnit.MILLISECONDS));
+    } finally {
+      client.stop();
+    }
+    
+    System.out.println("[Order 44] Tested Web Socket Rooms");
+  }
+
   /**
    * Close the game server when it's done.
    */
@@ -0,0 +1,210 @@
+package integration;
+
+import controllers.Database;
+import controllers.ShardRebalancer;
+import controllers.ShardedGameStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import models.GameBoard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class ShardedGameStoreTest {
+
+  // Number of games stored by each test
+  private static final int GAMES = 60;
+
+  /**
+   * Stores a game with one move played for each game ID.
+   * @param store The store.
+   * @throws Exception An exception thrown by the store or the gameboard.
+   */
+  private void storeGames(ShardedGameStore store) throws Exception {
+    for (int i = 0; i < GAMES; i++) {
+      final GameBoard board = new GameBoard('X');
+      board.joinGame();
+      store.set("shard-" + i, board);
+      board.playTurn(board.getP1(), i % 3, i / 3 % 3);
+      store.recordMoves("shard-" + i, board, 0);
+    }
+  }
+
+  /**
+   * Checks that every game stored by storeGames can be read back.
+   * @param store The store.
+   * @throws Exception An exception thrown by the store.
+   */
+  private void checkGames(ShardedGameStore store) throws Exception {
+    for (int i = 0; i < GAMES; i++) {
+      final GameBoard board = store.get("shard-" + i);
+      Assertions.assertEquals(1, board.getMoveCount());
+      Assertions.assertEquals('X', board.getBoardState()[i % 3][i / 3 % 3]);
+    }
+  }
+
+  @Test
+  public void testGamesSpreadAcrossShards() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-shards");
+    final ShardedGameStore store = new ShardedGameStore(directory.toString(), 4);
+    storeGames(store);
+    store.close();
+
+    // Each shard file holds exactly the games that hash to it
+    int total = 0;
+    for (int i = 0; i < 4; i++) {
+      final Database shard = new Database(ShardedGameStore.shardFile(directory.toString(), i));
+      final int index = i;
+      final List<String> gameIds = new ArrayList<>();
+      shard.loadAll((gameId, board) -> gameIds.add(gameId));
+      for (String gameId : gameIds) {
+        Assertions.assertEquals(index, ShardedGameStore.shardOf(gameId, 4));
+      }
+      Assertions.assertFalse(gameIds.isEmpty());
+      total += gameIds.size();
+      shard.close();
+    }
+    Assertions.assertEquals(GAMES, total);
+  }
+
+  @Test
+  public void testConcurrentWrites() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-shards");
+    final ShardedGameStore store = new ShardedGameStore(directory.toString(), 4);
+    final int threads = 8;
+    final int writes = 100;
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<?>> results = new ArrayList<>();
+
+    final long start = System.nanoTime();
+    for (int t = 0; t < threads; t++) {
+      final int thread = t;
+      results.add(executor.submit(() -> {
+        for (int i = 0; i < writes; i++) {
+          store.set("concurrent-" + thread + "-" + i, new GameBoard('O'));
+        }
+        return null;
+      }));
+    }
+    for (Future<?> result : results) {
+      result.get(60, TimeUnit.SECONDS);
+    }
+    final double seconds = (System.nanoTime() - start) / 1e9;
+    executor.shutdown();
+
+    for (int t = 0; t < threads; t++) {
+      for (int i = 0; i < writes; i++) {
+        Assertions.assertNotNull(store.get("concurrent-" + t + "-" + i));
+      }
+    }
+    Assertions.assertTrue(store.getCommitCount() <= threads * writes);
+    store.close();
+    System.out.println("Tested sharded concurrent writes: "
+        + Math.round(threads * writes / seconds) + " writes/sec");
+  }
+
+  /**
+   * Counts the moves logged across the shards.
+   * @param directory The directory of the shards.
+   * @param shards    The shard count.
+   * @return The number of logged moves.
+   * @throws SQLException An exception thrown when a shard cannot be read.
+   */
+  private int countLoggedMoves(Path directory, int shards) throws SQLException {
+    int count = 0;
+    for (int i = 0; i < shards; i++) {
+      final String url = "jdbc:sqlite:" + ShardedGameStore.shardFile(directory.toString(), i);
+      try (Connection connection = DriverManager.getConnection(url);
+           Statement statement = connection.createStatement();
+           ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM GAME_MOVES;")) {
+        count += rs.getInt(1);
+      }
+    }
+    return count;
+  }
+
+  @Test
+  public void testRebalance() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-shards");
+    ShardedGameStore store = new ShardedGameStore(directory.toString(), 2);
+    storeGames(store);
+
+    // A finished game is archived with its whole history
+    final GameBoard finished = new GameBoard('X');
+    finished.joinGame();
+    store.set("finished", finished);
+    finished.playTurn(finished.getP1(), 0, 0);
+    finished.playTurn(finished.getP2(), 1, 0);
+    finished.playTurn(finished.getP1(), 0, 1);
+    finished.playTurn(finished.getP2(), 1, 1);
+    finished.playTurn(finished.getP1(), 0, 2);
+    store.recordMoves("finished", finished, 0);
+    store.archive("finished");
+    store.close();
+    Assertions.assertEquals(GAMES, countLoggedMoves(directory, 2));
+
+    // Opening with another shard count fails until the games are rebalanced
+    Assertions.assertThrows(SQLException.class,
+        () -> new ShardedGameStore(directory.toString(), 3));
+    Assertions.assertTrue(ShardRebalancer.rebalance(directory.toString(), 2, 3) > 0);
+    store = new ShardedGameStore(directory.toString(), 3);
+    checkGames(store);
+    Assertions.assertEquals(5, store.get("finished").getMoveCount());
+    Assertions.assertEquals(1, store.get("finished").getWinner());
+    store.close();
+
+    // The move log is moved along with the snapshots
+    Assertions.assertEquals(GAMES, countLoggedMoves(directory, 3));
+
+    // Shrinking deletes the shards that are no longer used
+    ShardRebalancer.rebalance(directory.toString(), 3, 1);
+    Assertions.assertFalse(Files.exists(
+        Path.of(ShardedGameStore.shardFile(directory.toString(), 2))));
+    store = new ShardedGameStore(directory.toString(), 1);
+    checkGames(store);
+    Assertions.assertEquals(5, store.get("finished").getMoveCount());
+    store.close();
+    Assertions.assertEquals(GAMES, countLoggedMoves(directory, 1));
+  }
+
+  @Test
+  public void testTransactionWritesBoardAsStaged() throws Exception {
+    final Path directory = Files.createTempDirectory("tictactoe-shards");
+    final ShardedGameStore store = new ShardedGameStore(directory.toString(), 2);
+    final GameBoard board = new GameBoard('X');
+    board.joinGame();
+    store.set("staged", board);
+
+    // The board changes after its write is staged, before the transaction commits
+    store.inTransaction(() -> {
+      try {
+        board.playTurn(board.getP1(), 1, 1);
+        store.recordMoves("staged", board, 0);
+        board.playTurn(board.getP2(), 0, 0);
+      } catch (SQLException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new SQLException(e);
+      }
+    });
+    Assertions.assertEquals(1, store.get("staged").getMoveCount());
+
+    // The next write logs the change
+    store.recordMoves("staged", board, 1);
+    final GameBoard result = store.get("staged");
+    Assertions.assertEquals(2, result.getMoveCount());
+    Assertions.assertEquals('O', result.getBoardState()[0][0]);
+    store.close();
+  }
+
+}
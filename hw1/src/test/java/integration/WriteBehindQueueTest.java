@@ -0,0 +1,163 @@
+package integration;
+
+import controllers.Database;
+import controllers.GameStore;
+import controllers.WriteBehindQueue;
+import java.sql.SQLException;
+import java.util.function.BiConsumer;
+import models.GameBoard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class WriteBehindQueueTest {
+
+  @Test
+  public void testCoalescedWritesFlushLatest() throws Exception {
+    final Database db = new Database();
+    db.unset();
+    final WriteBehindQueue queue = new WriteBehindQueue(db, 60_000, 1_000);
+
+    final GameBoard board = new GameBoard('X');
+    board.joinGame();
+    queue.set("0", board);
+    board.playTurn(board.getP1(), 1, 1);
+    queue.set("0", board);
+    board.playTurn(board.getP2(), 0, 0);
+    queue.set("0", board);
+
+    // Only the latest write for the game is queued, and nothing is written yet
+    Assertions.assertEquals(1, queue.getPendingCount());
+    Assertions.assertEquals(null, db.get());
+
+    queue.flush();
+
+    final GameBoard result = db.get();
+    Assertions.assertEquals(0, queue.getPendingCount());
+    Assertions.assertEquals(0, queue.getLagMillis());
+    Assertions.assertEquals('X', result.getBoardState()[1][1]);
+    Assertions.assertEquals('O', result.getBoardState()[0][0]);
+    Assertions.assertEquals(1, result.getTurn());
+
+    queue.close();
+    db.close();
+  }
+
+  @Test
+  public void testUnsetReplacesQueuedSet() throws Exception {
+    final Database db = new Database();
+    final WriteBehindQueue queue = new WriteBehindQueue(db, 60_000, 1_000);
+
+    db.set(new GameBoard('X'));
+    queue.set("0", new GameBoard('O'));
+    queue.unset("0");
+
+    // Close flushes the queue
+    queue.close();
+
+    Assertions.assertEquals(null, db.get());
+    db.close();
+  }
+
+  @Test
+  public void testLagGrowsUntilFlush() throws Exception {
+    final Database db = new Database();
+    final WriteBehindQueue queue = new WriteBehindQueue(db, 60_000, 1_000);
+
+    queue.set("0", new GameBoard('X'));
+    Thread.sleep(20);
+
+    Assertions.assertTrue(queue.getLagMillis() >= 20);
+
+    queue.close();
+    Assertions.assertEquals(0, queue.getLagMillis());
+    db.unset();
+    db.close();
+  }
+
+  @Test
+  public void testMoveQueuedDuringFlush() throws Exception {
+    final Database db = new Database();
+    final GameBoard board = new GameBoard('X');
+    board.joinGame();
+
+    // A store that lets a move be played and queued once the flush has taken its batch
+    final WriteBehindQueue[] queue = new WriteBehindQueue[1];
+    final boolean[] interrupted = new boolean[1];
+    final GameStore store = new GameStore() {
+      @Override
+      public void set(String gameId, GameBoard gameboard) throws SQLException {
+        db.set(gameId, gameboard);
+      }
+
+      @Override
+      public void recordMoves(String gameId, GameBoard gameboard, int fromSeq)
+          throws SQLException {
+        db.recordMoves(gameId, gameboard, fromSeq);
+      }
+
+      @Override
+      public GameBoard get(String gameId) throws SQLException {
+        return db.get(gameId);
+      }
+
+      @Override
+      public void unset(String gameId) throws SQLException {
+        db.unset(gameId);
+      }
+
+      @Override
+      public void loadActive(BiConsumer<String, GameBoard> consumer) throws SQLException {
+        db.loadActive(consumer);
+      }
+
+      @Override
+      public void inTransaction(Transaction transaction) throws SQLException {
+        if (!interrupted[0]) {
+          interrupted[0] = true;
+          synchronized (board) {
+            final int fromSeq = board.getMoveCount();
+            try {
+              board.playTurn(board.getP1(), 2, 2);
+            } catch (Exception e) {
+              throw new SQLException(e);
+            }
+            queue[0].recordMoves("midflush", board, fromSeq);
+          }
+        }
+        db.inTransaction(transaction);
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    queue[0] = new WriteBehindQueue(store, 60_000, 1_000);
+
+    db.set("midflush", board);
+    board.playTurn(board.getP1(), 1, 1);
+    queue[0].recordMoves("midflush", board, 0);
+    board.playTurn(board.getP2(), 0, 0);
+    queue[0].recordMoves("midflush", board, 1);
+
+    // The first flush writes the move played meanwhile too, and the second writes it again
+    queue[0].flush();
+    queue[0].flush();
+
+    Assertions.assertEquals(0, queue[0].getPendingCount());
+    final GameBoard result = db.get("midflush");
+    Assertions.assertEquals(3, result.getMoveCount());
+    Assertions.assertEquals('X', result.getBoardState()[2][2]);
+
+    // A later move is still logged
+    synchronized (board) {
+      board.playTurn(board.getP2(), 0, 1);
+      queue[0].recordMoves("midflush", board, 3);
+    }
+    queue[0].close();
+    Assertions.assertEquals(4, db.get("midflush").getMoveCount());
+
+    db.unset("midflush");
+    db.close();
+  }
+
+}
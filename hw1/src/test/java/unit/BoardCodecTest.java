@@ -0,0 +1,53 @@
+package unit;
+
+import controllers.BoardCodec;
+import java.sql.SQLException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class BoardCodecTest {
+
+  @Test
+  public void testEncodeClassicBoard() throws Exception {
+    final char[][] board = {{'X', 0, 'O'}, {0, 'X', 0}, {'O', 0, 'X'}};
+
+    final byte[] bits = BoardCodec.encode(board);
+
+    // Version, size, then nine cells in three bytes
+    Assertions.assertEquals(5, bits.length);
+    Assertions.assertEquals(BoardCodec.VERSION, bits[0]);
+    Assertions.assertEquals(3, bits[1]);
+    Assertions.assertArrayEquals(board, BoardCodec.decode(bits));
+  }
+
+  @Test
+  public void testEncodeLargeBoard() throws Exception {
+    final char[][] board = new char[19][19];
+    for (int i = 0; i < 19; i++) {
+      for (int j = 0; j < 19; j++) {
+        board[i][j] = (i + j) % 3 == 0 ? 'X' : (i + j) % 3 == 1 ? 'O' : 0;
+      }
+    }
+
+    final byte[] bits = BoardCodec.encode(board);
+
+    Assertions.assertEquals(2 + 91, bits.length);
+    Assertions.assertArrayEquals(board, BoardCodec.decode(bits));
+  }
+
+  @Test
+  public void testDecodeUnknownVersion() {
+    final byte[] bits = BoardCodec.encode(new char[3][3]);
+    bits[0] = 2;
+
+    Assertions.assertThrows(SQLException.class, () -> BoardCodec.decode(bits));
+  }
+
+  @Test
+  public void testDecodeInvalidLength() {
+    final byte[] bits = {BoardCodec.VERSION, 3, 0};
+
+    Assertions.assertThrows(SQLException.class, () -> BoardCodec.decode(bits));
+  }
+
+}
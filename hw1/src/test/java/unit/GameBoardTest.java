@@ -1,5 +1,8 @@
 package unit;
 
+import com.google.gson.Gson;
+import java.nio.charset.StandardCharsets;
+import models.Engine;
 import models.GameBoard;
 import models.Player;
 import org.junit.jupiter.api.Assertions;
@@ -535,6 +538,244 @@ public class GameBoardTest {
     Assertions.assertEquals(true, board.isDraw());
   }
 
+  @Test
+  public void testPlayTurnFailure_PositionFilledBySetBoardState() {
+    final GameBoard board = new GameBoard('X');
+    try {
+      board.joinGame();
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    final char[][] boardState = new char[3][3];
+    boardState[2][0] = 'O';
+    board.setBoardState(boardState);
+
+    try {
+      board.playTurn(board.getP1(), 2, 0);
+      Assertions.fail();
+    } catch (Exception e) {
+      Assertions.assertEquals("Position already filled", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testPlayTurnSuccess_P1Wins_RestoredBoard() {
+    final char[][] boardState = new char[3][3];
+    boardState[0][0] = 'X';
+    boardState[1][1] = 'X';
+    boardState[0][1] = 'O';
+    boardState[0][2] = 'O';
+    final GameBoard board = new GameBoard(new Player('X', 1), new Player('O', 2),
+        true, 1, boardState, 0, false);
+
+    try {
+      board.playTurn(board.getP1(), 2, 2);
+    } catch (Exception e) {
+      Assertions.fail();
+    }
+
+    Assertions.assertEquals(1, board.getWinner());
+    Assertions.assertEquals('X', board.getBoardState()[2][2]);
+  }
+
+  @Test
+  public void testGameBoardSizeConstructor() {
+    final GameBoard board = new GameBoard('X', 15, 5);
+
+    Assertions.assertEquals(15, board.getSize());
+    Assertions.assertEquals(5, board.getWinLength());
+    Assertions.assertArrayEquals(new char[15][15], board.getBoardState());
+  }
+
+  @Test
+  public void testPlayTurnFailure_InvalidPosition_LargeBoard() {
+    final GameBoard board = new GameBoard('X', 15, 5);
+    try {
+      board.joinGame();
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    try {
+      board.playTurn(board.getP1(), 14, 14);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    try {
+      board.playTurn(board.getP2(), 15, 0);
+      Assertions.fail();
+    } catch (Exception e) {
+      Assertions.assertEquals("Invalid position", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testPlayTurnSuccess_P1Wins_LargeBoardDiagLeft() {
+    final GameBoard board = new GameBoard('X', 15, 5);
+    try {
+      board.joinGame();
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    try {
+      // Fill the anti-diagonal from both ends toward the middle
+      board.playTurn(board.getP1(), 3, 9);
+      board.playTurn(board.getP2(), 0, 0);
+      board.playTurn(board.getP1(), 7, 5);
+      board.playTurn(board.getP2(), 0, 1);
+      board.playTurn(board.getP1(), 4, 8);
+      board.playTurn(board.getP2(), 0, 2);
+      board.playTurn(board.getP1(), 6, 6);
+      Assertions.assertEquals(0, board.getWinner());
+      board.playTurn(board.getP2(), 0, 3);
+      board.playTurn(board.getP1(), 5, 7);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    Assertions.assertEquals(1, board.getWinner());
+  }
+
+  @Test
+  public void testPlayTurnSuccess_NoWin_LargeBoardBrokenLine() {
+    final GameBoard board = new GameBoard('X', 7, 4);
+    try {
+      board.joinGame();
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    try {
+      // Three in a row for player 1, blocked on one side by player 2 and the edge on the other
+      board.playTurn(board.getP1(), 0, 0);
+      board.playTurn(board.getP2(), 0, 3);
+      board.playTurn(board.getP1(), 0, 1);
+      board.playTurn(board.getP2(), 6, 6);
+      board.playTurn(board.getP1(), 0, 2);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    Assertions.assertEquals(0, board.getWinner());
+    Assertions.assertEquals(2, board.getTurn());
+  }
+
+  @Test
+  public void testPlayTurnSuccess_Draw_LargeBoard() {
+    final GameBoard board = new GameBoard('X', 4, 4);
+    try {
+      board.joinGame();
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    // Columns alternate in pairs so no row, column or diagonal is filled by one player
+    final int[][] moves = {
+      {0, 0}, {0, 2}, {0, 1}, {0, 3}, {1, 2}, {1, 0}, {1, 3}, {1, 1},
+      {2, 0}, {2, 2}, {2, 1}, {2, 3}, {3, 2}, {3, 0}, {3, 3}, {3, 1}
+    };
+    try {
+      for (int i = 0; i < moves.length; i++) {
+        board.playTurn(i % 2 == 0 ? board.getP1() : board.getP2(), moves[i][0], moves[i][1]);
+      }
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    Assertions.assertEquals(0, board.getWinner());
+    Assertions.assertEquals(true, board.isDraw());
+  }
+
+  @Test
+  public void testCopyKeepsMovesAndStaysApart() {
+    final GameBoard board = new GameBoard('X');
+    try {
+      board.joinGame();
+      board.playTurn(board.getP1(), 1, 1);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    final GameBoard copy = board.copy();
+    try {
+      board.playTurn(board.getP2(), 0, 0);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    Assertions.assertEquals(1, copy.getMoveCount());
+    Assertions.assertEquals(4, copy.getMove(1));
+    Assertions.assertEquals('\0', copy.getBoardState()[0][0]);
+    Assertions.assertEquals(2, copy.getTurn());
+    Assertions.assertEquals(2, board.getMoveCount());
+  }
+
+  @Test
+  public void testWinLengthDefaultsToSizeWhenMissing() {
+    // A board serialized before the win length was stored
+    final GameBoard board = new Gson().fromJson("{\"p1\":{\"type\":\"X\",\"id\":1},"
+        + "\"p2\":{\"type\":\"O\",\"id\":2},\"gameStarted\":true,\"turn\":1,"
+        + "\"boardState\":[[\"\\u0000\",\"\\u0000\",\"\\u0000\"],"
+        + "[\"\\u0000\",\"\\u0000\",\"\\u0000\"],"
+        + "[\"\\u0000\",\"\\u0000\",\"\\u0000\"]],"
+        + "\"winner\":0,\"isDraw\":false}", GameBoard.class);
+    Assertions.assertEquals(3, board.getWinLength());
+
+    // A single move does not win it
+    try {
+      board.playTurn(board.getP1(), 1, 1);
+      board.playTurn(board.getP2(), 0, 0);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+    Assertions.assertEquals(0, board.getWinner());
+    Assertions.assertEquals(1, board.getTurn());
+    Assertions.assertTrue(board.toJson().endsWith("\"winLength\":3}"));
+  }
+
+  @Test
+  public void testVersionIncreases() {
+    final GameBoard board = new GameBoard('X');
+    final long created = board.getVersion();
+
+    try {
+      board.joinGame();
+      final long joined = board.getVersion();
+      Assertions.assertTrue(joined > created);
+
+      board.playTurn(board.getP1(), 1, 1);
+      Assertions.assertTrue(board.getVersion() > joined);
+
+      // A turn gives the board one new version, however many fields it changes
+      final long played = board.getVersion();
+      board.playTurn(board.getP2(), 0, 0);
+      Assertions.assertEquals(played + 1, board.getVersion());
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    // Every board counts its own changes, copies included
+    Assertions.assertEquals(0, new GameBoard('X').getVersion());
+    Assertions.assertEquals(0, board.copy().getVersion());
+  }
+
+  @Test
+  public void testEngineReplyKeepsOneVersionPerTurn() {
+    final GameBoard board = new GameBoard('X');
+    try {
+      board.joinGame(Engine.forName("perfect"));
+      final long joined = board.getVersion();
+      board.playTurn(board.getP1(), 1, 1);
+      Assertions.assertEquals(2, board.getMoveCount());
+      Assertions.assertEquals(joined + 1, board.getVersion());
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+  }
+
   @Test
   public void testToJson() {
     final GameBoard board = new GameBoard('X');
@@ -542,4 +783,26 @@ public class GameBoardTest {
     Assertions.assertNotEquals("", board.toJson());
   }
 
+  @Test
+  public void testToJsonMemoizedUntilChange() {
+    final GameBoard board = new GameBoard('X');
+    final String json = board.toJson();
+    final byte[] bytes = board.toJsonBytes();
+
+    // The same version shares one encoding, which matches a fresh serialization
+    Assertions.assertSame(json, board.toJson());
+    Assertions.assertSame(bytes, board.toJsonBytes());
+    Assertions.assertEquals(new Gson().toJson(board), json);
+    Assertions.assertArrayEquals(json.getBytes(StandardCharsets.UTF_8), bytes);
+
+    // A change makes a new encoding
+    try {
+      board.joinGame();
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+    Assertions.assertNotEquals(json, board.toJson());
+    Assertions.assertEquals(new Gson().toJson(board), board.toJson());
+  }
+
 }
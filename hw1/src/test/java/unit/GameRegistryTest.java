@@ -0,0 +1,222 @@
+package unit;
+
+import controllers.GameRegistry;
+import java.util.ArrayList;
+import java.util.List;
+import models.GameBoard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class GameRegistryTest {
+
+  @Test
+  public void testPutThenGet() {
+    final GameRegistry games = new GameRegistry();
+    final GameBoard board = new GameBoard('X');
+
+    games.put("a", board);
+
+    Assertions.assertEquals(board, games.get("a"));
+    Assertions.assertEquals(null, games.get("b"));
+    Assertions.assertEquals(1, games.size());
+  }
+
+  @Test
+  public void testPutReplaces() {
+    final GameRegistry games = new GameRegistry();
+    final GameBoard board = new GameBoard('O');
+
+    games.put("a", new GameBoard('X'));
+    games.put("a", board);
+
+    Assertions.assertEquals(board, games.get("a"));
+    Assertions.assertEquals(1, games.size());
+  }
+
+  @Test
+  public void testRemove() {
+    final GameRegistry games = new GameRegistry();
+    final GameBoard board = new GameBoard('X');
+
+    games.put("a", board);
+
+    Assertions.assertEquals(board, games.remove("a"));
+    Assertions.assertEquals(null, games.get("a"));
+    Assertions.assertEquals(null, games.remove("a"));
+    Assertions.assertEquals(0, games.size());
+  }
+
+  @Test
+  public void testContainsOnlyTheRegisteredBoard() {
+    final GameRegistry games = new GameRegistry(2, (gameId, board) -> { });
+    final GameBoard board = new GameBoard('X');
+
+    games.put("a", board);
+    Assertions.assertTrue(games.contains("a", board));
+
+    // A replaced or evicted board is no longer the game's board
+    games.put("a", new GameBoard('X'));
+    Assertions.assertFalse(games.contains("a", board));
+    games.put("b", board);
+    for (int i = 0; i < 10; i++) {
+      games.put("other-" + i, new GameBoard('O'));
+    }
+    Assertions.assertFalse(games.contains("b", board));
+    Assertions.assertEquals(0, games.getHitCount() + games.getMissCount());
+  }
+
+  @Test
+  public void testClear() {
+    final GameRegistry games = new GameRegistry();
+
+    games.put("a", new GameBoard('X'));
+    games.put("b", new GameBoard('O'));
+    games.clear();
+
+    Assertions.assertEquals(0, games.size());
+  }
+
+  @Test
+  public void testBoundedKeepsCapacity() {
+    final GameRegistry games = new GameRegistry(100, (gameId, board) -> { });
+
+    for (int i = 0; i < 1000; i++) {
+      games.put("game-" + i, new GameBoard('X'));
+    }
+
+    Assertions.assertEquals(100, games.size());
+    Assertions.assertEquals(900, games.getEvictionCount());
+  }
+
+  @Test
+  public void testBoundedKeepsFrequentGames() {
+    final GameRegistry games = new GameRegistry(100, (gameId, board) -> { });
+    for (int i = 0; i < 50; i++) {
+      games.put("hot-" + i, new GameBoard('X'));
+    }
+    for (int round = 0; round < 5; round++) {
+      for (int i = 0; i < 50; i++) {
+        games.get("hot-" + i);
+      }
+    }
+
+    // A scan of games used once does not push out the games in use
+    for (int i = 0; i < 1000; i++) {
+      games.put("cold-" + i, new GameBoard('O'));
+    }
+
+    for (int i = 0; i < 50; i++) {
+      Assertions.assertNotNull(games.get("hot-" + i));
+    }
+    Assertions.assertEquals(100, games.size());
+  }
+
+  @Test
+  public void testBoundedWritesBackDirtyGames() {
+    final List<String> writtenBack = new ArrayList<>();
+    final GameRegistry games = new GameRegistry(10,
+        (gameId, board) -> writtenBack.add(gameId));
+
+    games.put("dirty", new GameBoard('X'));
+    games.setDirty("dirty", true);
+    games.put("clean", new GameBoard('X'));
+    for (int i = 0; i < 100; i++) {
+      games.put("game-" + i, new GameBoard('O'));
+    }
+
+    Assertions.assertNull(games.get("dirty"));
+    Assertions.assertNull(games.get("clean"));
+    Assertions.assertEquals(List.of("dirty"), writtenBack);
+    Assertions.assertEquals(1, games.getWriteBackCount());
+    Assertions.assertFalse(games.isDirty("dirty"));
+  }
+
+  @Test
+  public void testEvictionWaitsForMoveInFlight() throws Exception {
+    final List<Boolean> registeredOnWriteBack = new ArrayList<>();
+    final GameRegistry[] registry = new GameRegistry[1];
+    final GameRegistry games = new GameRegistry(10,
+        (gameId, board) -> registeredOnWriteBack.add(registry[0].contains(gameId, board)));
+    registry[0] = games;
+    final GameBoard board = new GameBoard('X');
+    games.put("moving", board);
+    games.setDirty("moving", true);
+
+    // Fill the registry while a move holds the game's lock
+    final Thread filler = new Thread(() -> {
+      for (int i = 0; i < 100; i++) {
+        games.put("game-" + i, new GameBoard('O'));
+      }
+    });
+    synchronized (board) {
+      filler.start();
+      filler.join(200);
+
+      // The game stays registered until the move is done, so no request reloads it meanwhile
+      Assertions.assertTrue(filler.isAlive());
+      Assertions.assertTrue(games.contains("moving", board));
+    }
+    filler.join();
+
+    // It was written back while still registered, then removed
+    Assertions.assertFalse(games.contains("moving", board));
+    Assertions.assertEquals(List.of(true), registeredOnWriteBack);
+    Assertions.assertEquals(10, games.size());
+  }
+
+  @Test
+  public void testSingleGameCapacity() {
+    final GameRegistry games = new GameRegistry(1, (gameId, board) -> { });
+    final GameBoard board = new GameBoard('X');
+
+    games.put("a", new GameBoard('X'));
+    games.put("b", board);
+
+    Assertions.assertEquals(1, games.size());
+    Assertions.assertEquals(board, games.get("b"));
+  }
+
+  @Test
+  public void testBoundedKeepsCapacityUnderRacingWrites() throws Exception {
+    final GameRegistry games = new GameRegistry(10, (gameId, board) -> { });
+    final List<Thread> threads = new ArrayList<>();
+    for (int t = 0; t < 4; t++) {
+      threads.add(new Thread(() -> {
+        for (int i = 0; i < 2000; i++) {
+          final String gameId = Integer.toString(i % 20);
+          final GameBoard board = new GameBoard('X');
+          games.put(gameId, board);
+          if (i % 3 == 0) {
+            games.remove(gameId, board);
+          }
+        }
+      }));
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    // Every registered board still holds its place in the eviction order
+    for (int i = 0; i < 40; i++) {
+      games.put("filler" + i, new GameBoard('X'));
+    }
+    Assertions.assertEquals(10, games.size());
+  }
+
+  @Test
+  public void testHitAndMissCounts() {
+    final GameRegistry games = new GameRegistry();
+
+    games.put("a", new GameBoard('X'));
+    games.get("a");
+    games.get("a");
+    games.get("b");
+
+    Assertions.assertEquals(2, games.getHitCount());
+    Assertions.assertEquals(1, games.getMissCount());
+  }
+
+}
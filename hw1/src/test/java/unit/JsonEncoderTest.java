@@ -0,0 +1,69 @@
+package unit;
+
+import com.google.gson.Gson;
+import models.GameBoard;
+import models.JsonEncoder;
+import models.Message;
+import models.Player;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class JsonEncoderTest {
+
+  private final Gson gson = new Gson();
+
+  @Test
+  public void testNewBoardMatchesGson() {
+    final GameBoard board = new GameBoard('X');
+
+    // Player 2 is missing and every cell is empty
+    Assertions.assertEquals(gson.toJson(board), JsonEncoder.encode(board));
+  }
+
+  @Test
+  public void testPlayedBoardsMatchGson() {
+    final GameBoard board = new GameBoard('O');
+    final GameBoard large = new GameBoard('X', 5, 4);
+    try {
+      board.joinGame();
+      board.playTurn(board.getP1(), 0, 0);
+      board.playTurn(board.getP2(), 1, 1);
+      board.playTurn(board.getP1(), 0, 1);
+      board.playTurn(board.getP2(), 2, 2);
+      board.playTurn(board.getP1(), 0, 2);
+      large.joinGame();
+      large.playTurn(large.getP1(), 4, 4);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    Assertions.assertEquals(1, board.getWinner());
+    Assertions.assertEquals(gson.toJson(board), JsonEncoder.encode(board));
+    Assertions.assertEquals(gson.toJson(large), JsonEncoder.encode(large));
+  }
+
+  @Test
+  public void testUnusualFieldsMatchGson() {
+    // Missing player 1, a missing row and characters Gson escapes
+    final char[][] boardState = {{'<', '\n', '\u2028'}, null, {'"', '\\', '\u00e9'}};
+    final GameBoard board = new GameBoard(null, new Player('&', 2), true, 2, boardState, 0,
+        true);
+
+    Assertions.assertEquals(gson.toJson(board), JsonEncoder.encode(board));
+  }
+
+  @Test
+  public void testMessagesMatchGson() {
+    final Message[] messages = {
+      new Message(true, 100, ""),
+      new Message(false, 105, "Position already filled"),
+      new Message(false, 0, "<script>alert('x' && \"y\" = 1)</script>\t\u0001\u2029"),
+      new Message(false, 0, null)
+    };
+
+    for (Message message : messages) {
+      Assertions.assertEquals(gson.toJson(message), JsonEncoder.encode(message));
+    }
+  }
+
+}
@@ -0,0 +1,105 @@
+package unit;
+
+import java.util.concurrent.CompletableFuture;
+import models.GameBoard;
+import models.MctsEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class MctsEngineTest {
+
+  @Test
+  public void testChooseMove_TakesWin() {
+    final MctsEngine engine = new MctsEngine(100, 2);
+    final GameBoard board = new GameBoard('X', 7, 4);
+    try {
+      board.joinGame();
+      board.playTurn(board.getP1(), 6, 6);
+      board.playTurn(board.getP2(), 3, 0);
+      board.playTurn(board.getP1(), 6, 0);
+      board.playTurn(board.getP2(), 3, 1);
+      board.playTurn(board.getP1(), 0, 6);
+      board.playTurn(board.getP2(), 3, 2);
+      board.playTurn(board.getP1(), 3, 4);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    // Player 2 wins by completing the row at (3, 3)
+    Assertions.assertEquals(3 * 7 + 3, engine.chooseMove(board));
+    Assertions.assertTrue(engine.getPlayoutsPerSecond() > 0);
+  }
+
+  @Test
+  public void testChooseMove_BlocksLoss() {
+    final MctsEngine engine = new MctsEngine(200, 2);
+    final GameBoard board = new GameBoard('X', 5, 4);
+    try {
+      board.joinGame();
+      board.playTurn(board.getP1(), 1, 0);
+      board.playTurn(board.getP2(), 4, 4);
+      board.playTurn(board.getP1(), 1, 1);
+      board.playTurn(board.getP2(), 4, 0);
+      board.playTurn(board.getP1(), 1, 2);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    // Player 1 wins at (1, 3) unless player 2 takes it
+    Assertions.assertEquals(1 * 5 + 3, engine.chooseMove(board));
+  }
+
+  @Test
+  public void testChooseMoveAsync_DoesNotBlock() {
+    final MctsEngine engine = new MctsEngine(300, 2);
+    final GameBoard board = new GameBoard('X', 7, 4);
+    try {
+      board.joinGame();
+      board.playTurn(board.getP1(), 3, 3);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    // The search runs on the engine's pool, and reads the board only before returning
+    final CompletableFuture<Integer> reply = engine.chooseMoveAsync(board);
+    Assertions.assertFalse(reply.isDone());
+    final int cell = reply.join();
+    Assertions.assertNotEquals(3 * 7 + 3, cell);
+    Assertions.assertEquals('\0', board.getBoardState()[cell / 7][cell % 7]);
+  }
+
+  @Test
+  public void testSupports() {
+    final MctsEngine engine = new MctsEngine(20, 1);
+    Assertions.assertTrue(engine.supports(new GameBoard('X')));
+    Assertions.assertTrue(engine.supports(new GameBoard('X', GameBoard.MAX_SIZE, 5)));
+
+    // No line can win a board whose win length is longer than its side
+    Assertions.assertFalse(engine.supports(new GameBoard('X', 3, 4)));
+    Assertions.assertFalse(engine.supports(new GameBoard('X', 5, 6)));
+
+    // A board without a win length is won by a full row
+    Assertions.assertTrue(engine.supports(new GameBoard('X', 5, 0)));
+  }
+
+  @Test
+  public void testPlayTurnSuccess_EngineRepliesOnLargeBoard() {
+    final GameBoard board = new GameBoard('X', 15, 5);
+    try {
+      board.joinGame(new MctsEngine(20, 2));
+      board.playTurn(board.getP1(), 7, 7);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    int filled = 0;
+    for (char[] row : board.getBoardState()) {
+      for (char move : row) {
+        filled += move == 'O' ? 1 : 0;
+      }
+    }
+    Assertions.assertEquals(1, filled);
+    Assertions.assertEquals(1, board.getTurn());
+  }
+
+}
@@ -0,0 +1,109 @@
+package unit;
+
+import models.GameBoard;
+import models.PerfectPlayEngine;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PerfectPlayEngineTest {
+
+  @Test
+  public void testPositionCount() {
+    Assertions.assertEquals(5478, PerfectPlayEngine.getPositionCount());
+  }
+
+  @Test
+  public void testEmptyBoardIsDraw() {
+    Assertions.assertEquals(0, PerfectPlayEngine.getValue(0));
+  }
+
+  @Test
+  public void testSupports() {
+    Assertions.assertEquals(true, PerfectPlayEngine.INSTANCE.supports(new GameBoard('X')));
+    Assertions.assertEquals(false, PerfectPlayEngine.INSTANCE.supports(new GameBoard('X', 4, 3)));
+  }
+
+  @Test
+  public void testJoinGameFailure_UnsupportedBoard() {
+    final GameBoard board = new GameBoard('X', 15, 5);
+
+    try {
+      board.joinGame(PerfectPlayEngine.INSTANCE);
+      Assertions.fail();
+    } catch (Exception e) {
+      Assertions.assertEquals("Opponent not supported on this board", e.getMessage());
+    }
+    Assertions.assertEquals(false, board.isGameStarted());
+  }
+
+  @Test
+  public void testPlayTurnSuccess_EngineReplies() {
+    final GameBoard board = new GameBoard('X');
+    try {
+      board.joinGame(PerfectPlayEngine.INSTANCE);
+      board.playTurn(board.getP1(), 0, 0);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    // The only move that does not lose to a corner opening is the center
+    Assertions.assertEquals('O', board.getBoardState()[1][1]);
+    Assertions.assertEquals(1, board.getTurn());
+  }
+
+  @Test
+  public void testEngineNeverLoses() {
+    final GameBoard board = new GameBoard('O');
+    try {
+      board.joinGame(PerfectPlayEngine.INSTANCE);
+    } catch (Exception e) {
+      Assertions.fail(e);
+    }
+
+    Assertions.assertEquals(0, countLosses(board));
+  }
+
+  /**
+   * Plays every sequence of moves for player 1 against the engine.
+   * @param board The board to play from.
+   * @return The number of games won by player 1.
+   */
+  private int countLosses(GameBoard board) {
+    if (board.isGameOver()) {
+      return board.getWinner() == 1 ? 1 : 0;
+    }
+    int losses = 0;
+    for (int x = 0; x < 3; x++) {
+      for (int y = 0; y < 3; y++) {
+        if (board.getBoardState()[x][y] != '\0') {
+          continue;
+        }
+        final GameBoard next = copy(board);
+        try {
+          next.playTurn(next.getP1(), x, y);
+        } catch (Exception e) {
+          Assertions.fail(e);
+        }
+        losses += countLosses(next);
+      }
+    }
+    return losses;
+  }
+
+  /**
+   * Copies a board and its engine.
+   * @param board The board to copy.
+   * @return The copy.
+   */
+  private GameBoard copy(GameBoard board) {
+    final char[][] boardState = new char[3][3];
+    for (int i = 0; i < 3; i++) {
+      boardState[i] = board.getBoardState()[i].clone();
+    }
+    final GameBoard copy = new GameBoard(board.getP1(), board.getP2(), board.isGameStarted(),
+        board.getTurn(), boardState, board.getWinner(), board.isDraw());
+    copy.setEngine(board.getEngine());
+    return copy;
+  }
+
+}
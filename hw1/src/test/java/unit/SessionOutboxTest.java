@@ -0,0 +1,189 @@
+package unit;
+
+import controllers.SessionOutbox;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.LogicalConnection;
+import org.eclipse.jetty.websocket.common.WebSocketRemoteEndpoint;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class SessionOutboxTest {
+
+  // Texts sent to the fake session, in order
+  private final List<String> sent = new ArrayList<>();
+
+  // Callbacks of the sends that have not finished yet
+  private final List<WriteCallback> inFlight = new ArrayList<>();
+
+  private boolean disconnected;
+
+  // Gameboard the offered boards come from
+  private final Object board = new Object();
+
+  /**
+   * Creates a session whose sends finish only when the test completes their callbacks.
+   * @return The fake session.
+   */
+  private Session slowSession() {
+    final RemoteEndpoint remote = (RemoteEndpoint) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {RemoteEndpoint.class},
+        (proxy, method, args) -> {
+          if ("sendString".equals(method.getName()) && args.length == 2) {
+            sent.add((String) args[0]);
+            inFlight.add((WriteCallback) args[1]);
+          }
+          return null;
+        });
+    return (Session) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Session.class},
+        (proxy, method, args) -> {
+          if ("disconnect".equals(method.getName())) {
+            disconnected = true;
+          }
+          return "getRemote".equals(method.getName()) ? remote : null;
+        });
+  }
+
+  /**
+   * Encodes a board's text the way boards are offered.
+   * @param text The text.
+   * @return The text as UTF-8.
+   */
+  private static byte[] json(String text) {
+    return text.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testSendsEncodedBoardAsTextFrame() {
+    final List<Frame> frames = new ArrayList<>();
+    final LogicalConnection connection = (LogicalConnection) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {LogicalConnection.class},
+        (proxy, method, args) -> null);
+    final RemoteEndpoint remote = new WebSocketRemoteEndpoint(connection,
+        (frame, callback, batchMode) -> frames.add(frame));
+    final Session session = (Session) Proxy.newProxyInstance(
+        getClass().getClassLoader(), new Class<?>[] {Session.class},
+        (proxy, method, args) -> "getRemote".equals(method.getName()) ? remote : null);
+    final byte[] bytes = json("{\"turn\":1}");
+
+    new SessionOutbox(session).offer(board, 1, bytes);
+    new SessionOutbox(session).offer(board, 1, bytes);
+
+    // Each session sends the shared bytes in a buffer of its own, without encoding them again
+    Assertions.assertEquals(2, frames.size());
+    for (Frame frame : frames) {
+      Assertions.assertEquals(Frame.Type.TEXT, frame.getType());
+      Assertions.assertSame(bytes, frame.getPayload().array());
+      Assertions.assertEquals(bytes.length, frame.getPayload().remaining());
+    }
+    Assertions.assertNotSame(frames.get(0).getPayload(), frames.get(1).getPayload());
+  }
+
+  @Test
+  public void testSendsNewestBoardAfterSendInFlight() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+    final long coalesced = SessionOutbox.getCoalescedCount();
+
+    outbox.offer(board, 1, json("one"));
+    outbox.offer(board, 2, json("two"));
+    outbox.offer(board, 3, json("three"));
+
+    // Only the first board is sent while the client is busy
+    Assertions.assertEquals(List.of("one"), sent);
+
+    // The newest board follows once the first send finishes
+    inFlight.remove(0).writeSuccess();
+    Assertions.assertEquals(List.of("one", "three"), sent);
+    Assertions.assertEquals(coalesced + 1, SessionOutbox.getCoalescedCount());
+
+    // Nothing is left to send afterwards
+    inFlight.remove(0).writeSuccess();
+    Assertions.assertEquals(2, sent.size());
+  }
+
+  @Test
+  public void testTakesBoardOfReplacedGameboard() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+
+    outbox.offer(board, 5, json("five"));
+    inFlight.remove(0).writeSuccess();
+
+    // A gameboard that replaced the first counts its versions from the start
+    outbox.offer(new Object(), 1, json("replaced"));
+    Assertions.assertEquals(List.of("five", "replaced"), sent);
+  }
+
+  @Test
+  public void testDropsOlderBoards() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+
+    outbox.offer(board, 5, json("five"));
+    inFlight.remove(0).writeSuccess();
+    outbox.offer(board, 4, json("four"));
+
+    Assertions.assertEquals(List.of("five"), sent);
+  }
+
+  @Test
+  public void testSendsAgainAfterFailure() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+
+    outbox.offer(board, 1, json("one"));
+    outbox.offer(board, 2, json("two"));
+    inFlight.remove(0).writeFailed(new RuntimeException("Closed"));
+
+    Assertions.assertEquals(List.of("one", "two"), sent);
+  }
+
+  @Test
+  public void testRejectsBoardsPastQueueLimit() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+
+    outbox.offer(board, 0, json("first"));
+    for (int i = 1; i <= SessionOutbox.MAX_QUEUED; i++) {
+      Assertions.assertTrue(outbox.offer(board, i, json("board")));
+    }
+    Assertions.assertEquals(SessionOutbox.MAX_QUEUED, outbox.getQueueDepth());
+
+    // One more board behind the stuck send is too many
+    Assertions.assertFalse(outbox.offer(board, SessionOutbox.MAX_QUEUED + 1, json("board")));
+  }
+
+  @Test
+  public void testOverdueAfterSendDeadline() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+    final long deadline = TimeUnit.MILLISECONDS.toNanos(SessionOutbox.SEND_DEADLINE_MS);
+
+    Assertions.assertFalse(outbox.isOverdue(System.nanoTime() + 2 * deadline));
+    outbox.offer(board, 1, json("one"));
+    Assertions.assertFalse(outbox.isOverdue(System.nanoTime()));
+    Assertions.assertTrue(outbox.isOverdue(System.nanoTime() + 2 * deadline));
+
+    // A finished send is no longer overdue
+    inFlight.remove(0).writeSuccess();
+    Assertions.assertFalse(outbox.isOverdue(System.nanoTime() + 2 * deadline));
+  }
+
+  @Test
+  public void testCloseDisconnectsAndStopsSending() {
+    final SessionOutbox outbox = new SessionOutbox(slowSession());
+
+    outbox.offer(board, 1, json("one"));
+    outbox.offer(board, 2, json("two"));
+    outbox.close();
+    inFlight.remove(0).writeSuccess();
+    outbox.offer(board, 3, json("three"));
+
+    Assertions.assertTrue(disconnected);
+    Assertions.assertEquals(List.of("one"), sent);
+  }
+
+}